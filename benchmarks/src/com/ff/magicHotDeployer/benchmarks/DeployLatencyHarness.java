@@ -0,0 +1,376 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.io.FileUtils;
+import org.ini4j.Ini;
+import org.ini4j.IniPreferences;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.engine.LatencyHistogram;
+import com.ff.magicHotDeployer.engine.MagicHotDeployerEngine;
+import com.ff.magicHotDeployer.engine.PollingWatchService;
+import com.ff.magicHotDeployer.engine.SharedWatchService;
+import com.ff.magicHotDeployer.engine.WatchBackend;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * end to end latency, from a file being saved in the workspace to the change being visible in the deployment.
+ *
+ * builds a synthetic workspace and a fake standalone/tmp/vfs/deployment/deploymentXXXX/acme-web-1.0.0.war tree
+ * in a temp folder, starts a real engine on them, then replays bursts of file writes, deletes and new folders
+ * while a checker thread polls the deployment for each expected change.
+ *
+ * runs headless, arguments are key=value pairs:
+ * java -cp target/benchmarks.jar com.ff.magicHotDeployer.benchmarks.DeployLatencyHarness bursts=50 burstSize=200 workers=4
+ *
+ * bursts, burstSize, rate (bursts per second), fileSize (bytes), overwrites, deletes (percent of burstSize),
+ * dirs (new folders per burst, each holding dirFiles files), timeout (ms per change) and keep (true to leave the temp folder)
+ * drive the load: any other key goes to the instance configuration as it would in config.ini (e.g. coalesceWindow, copyMode).
+ */
+public class DeployLatencyHarness {
+
+	private static final String PREFIX = "acme-web";
+
+	private Map<String, String> settings = new LinkedHashMap<String, String>();
+	private Map<String, String> instanceSettings = new LinkedHashMap<String, String>();
+
+	private Path root;
+	private Path source;
+	private Path target;
+
+	private ConcurrentLinkedQueue<Expectation> submitted = new ConcurrentLinkedQueue<Expectation>();
+	private List<Path> settled = new ArrayList<Path>();
+	private Map<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+	private AtomicLong completed = new AtomicLong();
+	private AtomicLong timedOut = new AtomicLong();
+	private volatile long lastCompletion = 0L;
+	private volatile Boolean generating = true;
+	private Random random = new Random(42);
+	private Long fileCounter = 0L;
+
+	public static void main(String[] args) throws Exception {
+		DeployLatencyHarness harness = new DeployLatencyHarness(args);
+		int exitCode = 0;
+		try {
+			exitCode = harness.run();
+		}
+		finally {
+			harness.cleanup();
+		}
+		// the shared watcher thread keeps the vm alive
+		System.exit(exitCode);
+	}
+
+	public DeployLatencyHarness(String[] args) {
+		settings.put("bursts", "20");
+		settings.put("burstSize", "100");
+		settings.put("rate", "2");
+		settings.put("fileSize", "2048");
+		settings.put("overwrites", "30");
+		settings.put("deletes", "10");
+		settings.put("dirs", "2");
+		settings.put("dirFiles", "5");
+		settings.put("timeout", "10000");
+		settings.put("keep", "false");
+
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 1) {
+				throw new IllegalArgumentException("arguments must be key=value pairs : " + arg);
+			}
+			String key = arg.substring(0, separator);
+			String value = arg.substring(separator + 1);
+			if (settings.containsKey(key)) {
+				settings.put(key, value);
+			}
+			else {
+				instanceSettings.put(key, value);
+			}
+		}
+
+		for (String kind : Arrays.asList("write", "overwrite", "delete", "folder")) {
+			latencies.put(kind, new LatencyHistogram());
+		}
+	}
+
+	private int setting(String key) {
+		return Integer.parseInt(settings.get(key));
+	}
+
+	public int run() throws Exception {
+		if (!instanceSettings.containsKey(ConfigurationProvider.PARAM_LOG_LEVEL)) {
+			Logger.setFilterLevel(Logger.LEVEL_WARNING);
+		}
+
+		buildTrees();
+		startEngine();
+
+		Thread checker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				check();
+			}
+		}, "harness-checker");
+		checker.setDaemon(true);
+
+		// readiness probe: the first change to come through means the engine is watching
+		Path probe = source.resolve("probe.txt");
+		long probeStarted = System.nanoTime();
+		write(probe, 1);
+		while (!Files.exists(toTarget(probe))) {
+			if (System.nanoTime() - probeStarted > TimeUnit.SECONDS.toNanos(30)) {
+				throw new IllegalStateException("engine did not deploy the probe file within 30 seconds");
+			}
+			// the engine may still be registering: touch the probe again
+			write(probe, 1);
+			Thread.sleep(100);
+		}
+		checker.start();
+
+		System.out.println("load: " + settings);
+		System.out.println("instance: " + instanceSettings);
+
+		long periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, setting("rate"));
+		long started = System.nanoTime();
+		for (int burst = 0; burst < setting("bursts"); burst ++) {
+			LockSupport.parkNanos(started + burst * periodNanos - System.nanoTime());
+			burst(burst);
+		}
+		generating = false;
+		checker.join();
+
+		report(started);
+		return timedOut.get() > 0 ? 1 : 0;
+	}
+
+	private void buildTrees() throws IOException {
+		root = Files.createTempDirectory("mhd-harness");
+		source = root.resolve("workspace/acme-web/target/classes");
+		Path jbossHome = root.resolve("jboss/standalone");
+		target = jbossHome.resolve("tmp/vfs/deployment/deployment4f3a9c21/" + PREFIX + "-1.0.0.war/WEB-INF/classes");
+
+		Files.createDirectories(source.resolve("com/acme/web"));
+		Files.createDirectories(target);
+		// some unrelated deployments next to ours
+		for (int i = 0; i < 3; i ++) {
+			Files.createDirectories(target.getParent().getParent().getParent().resolve("other" + i + "-1.0.0.war/WEB-INF/classes"));
+		}
+
+		instanceSettings.put(ConfigurationProvider.PARAM_SOURCE_FOLDER, source.toString());
+		instanceSettings.put(ConfigurationProvider.PARAM_JBOSS_HOME, jbossHome.toString());
+		instanceSettings.put(ConfigurationProvider.PARAM_DEST_PACKAGE_PREFIX, PREFIX);
+		instanceSettings.put(ConfigurationProvider.PARAM_DEST_SUB_FOLDER, "/WEB-INF/classes");
+		if (!instanceSettings.containsKey(ConfigurationProvider.PARAM_INSTANCE_NAME)) {
+			instanceSettings.put(ConfigurationProvider.PARAM_INSTANCE_NAME, "harness");
+		}
+	}
+
+	private void startEngine() throws Exception {
+		Ini ini = new Ini();
+		for (Map.Entry<String, String> entry : instanceSettings.entrySet()) {
+			ini.put("harness", entry.getKey(), entry.getValue());
+		}
+
+		final ConfigurationProvider cfg = new ConfigurationProvider(
+			ConfigurationProvider.parseCommandLine(new String[0]),
+			new IniPreferences(ini).node("harness"),
+			null
+		);
+		cfg.reload();
+
+		// same backend as EngineLoader would pick, so that pollingWatch runs are measured on the poller
+		WatchBackend backend;
+		if (cfg.isPollingWatch()) {
+			backend = new PollingWatchService(cfg.getName(), cfg.getPollInterval());
+		}
+		else {
+			backend = new SharedWatchService();
+		}
+
+		final MagicHotDeployerEngine engine = new MagicHotDeployerEngine(cfg, backend);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					engine.run();
+				} catch (Throwable e) {
+					Logger.error("engine failed", e);
+				}
+			}
+		}, "harness-engine");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void burst(int burst) throws IOException {
+		int size = setting("burstSize");
+		int overwrites = Math.min(size * setting("overwrites") / 100, settled.size());
+		int deletes = Math.min(size * setting("deletes") / 100, settled.size() - overwrites);
+		int writes = size - overwrites - deletes;
+
+		// overwrites and deletes pick files whose last change has already been deployed
+		List<Path> candidates;
+		synchronized (settled) {
+			candidates = new ArrayList<Path>(settled);
+		}
+		Collections.shuffle(candidates, random);
+		Iterator<Path> picks = candidates.iterator();
+
+		for (int i = 0; i < writes; i ++) {
+			Path file = source.resolve("com/acme/web/" + nextName());
+			submitted.add(new Expectation("write", file, write(file, burst)));
+		}
+		for (int i = 0; i < overwrites && picks.hasNext(); i ++) {
+			Path file = picks.next();
+			unsettle(file);
+			submitted.add(new Expectation("overwrite", file, write(file, burst)));
+		}
+		for (int i = 0; i < deletes && picks.hasNext(); i ++) {
+			Path file = picks.next();
+			unsettle(file);
+			Files.delete(file);
+			submitted.add(new Expectation("delete", file, -1L));
+		}
+		for (int d = 0; d < setting("dirs"); d ++) {
+			Path folder = source.resolve("com/acme/web/generated" + burst + "_" + d);
+			Files.createDirectories(folder);
+			for (int f = 0; f < setting("dirFiles"); f ++) {
+				Path file = folder.resolve(nextName());
+				submitted.add(new Expectation("folder", file, write(file, burst)));
+			}
+		}
+	}
+
+	private String nextName() {
+		return "Generated" + (fileCounter ++) + ".class";
+	}
+
+	/**
+	 * @return the written size, which changes at every burst so that overwrites can be told apart
+	 */
+	private long write(Path file, int burst) throws IOException {
+		byte[] content = new byte[setting("fileSize") + burst + 1];
+		random.nextBytes(content);
+		Files.write(file, content);
+		return content.length;
+	}
+
+	private void unsettle(Path file) {
+		synchronized (settled) {
+			settled.remove(file);
+		}
+	}
+
+	private Path toTarget(Path file) {
+		return target.resolve(source.relativize(file).toString());
+	}
+
+	// runs on the checker thread until every change has been seen or has timed out
+	private void check() {
+		List<Expectation> pending = new ArrayList<Expectation>();
+		long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(setting("timeout"));
+
+		while (generating || !pending.isEmpty() || !submitted.isEmpty()) {
+			Expectation next;
+			while ((next = submitted.poll()) != null) {
+				pending.add(next);
+			}
+
+			Iterator<Expectation> iterator = pending.iterator();
+			while (iterator.hasNext()) {
+				Expectation expected = iterator.next();
+				long now = System.nanoTime();
+				if (expected.isMet()) {
+					latencies.get(expected.kind).record(now - expected.started);
+					completed.incrementAndGet();
+					lastCompletion = now;
+					iterator.remove();
+					if (expected.size >= 0) {
+						synchronized (settled) {
+							settled.add(expected.file);
+						}
+					}
+				}
+				else if (now - expected.started > timeoutNanos) {
+					timedOut.incrementAndGet();
+					System.out.println("timed out : " + expected.kind + " " + expected.file);
+					iterator.remove();
+				}
+			}
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+		}
+	}
+
+	private void report(long started) {
+		double seconds = Math.max(1L, lastCompletion - started) / (double) TimeUnit.SECONDS.toNanos(1);
+
+		System.out.println();
+		System.out.println(String.format("%-10s %8s %10s %10s %10s %10s", "change", "count", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			if (histogram.getCount() > 0) {
+				System.out.println(line(entry.getKey(), histogram));
+			}
+		}
+		System.out.println(String.format("%-10s %8d", "timed out", timedOut.get()));
+		System.out.println(String.format("throughput: %d changes deployed in %.2f s = %.1f changes/s",
+			completed.get(), seconds, completed.get() / seconds));
+	}
+
+	private static String line(String name, LatencyHistogram histogram) {
+		return String.format("%-10s %8d %10.2f %10.2f %10.2f %10.2f", name, histogram.getCount(),
+			histogram.getPercentile(50) / 1000.0, histogram.getPercentile(95) / 1000.0,
+			histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0);
+	}
+
+	private void cleanup() {
+		if (root == null || Boolean.valueOf(settings.get("keep"))) {
+			return;
+		}
+		// the engine is still running and would complain about the trees going away
+		Logger.setFilterLevel(Logger.LEVEL_SHUT_UP);
+		FileUtils.deleteQuietly(root.toFile());
+	}
+
+	private class Expectation {
+		private String kind;
+		private Path file;
+		private Path deployed;
+		private long size;
+		private long started;
+
+		private Expectation(String kind, Path file, long size) {
+			this.kind = kind;
+			this.file = file;
+			this.deployed = toTarget(file);
+			this.size = size;
+			this.started = System.nanoTime();
+		}
+
+		private Boolean isMet() {
+			if (size < 0) {
+				return !Files.exists(deployed);
+			}
+			try {
+				return Files.size(deployed) == size;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.engine.JbossDeployer;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * allocated bytes per processed event with debug and trace filtered out.
+ *
+ * run with the gc profiler and read gc.alloc.rate.norm (bytes per operation):
+ * java -jar target/benchmarks.jar EventAllocation -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventAllocationBenchmark {
+
+	private String instanceName = "[ bench ] ";
+	private Long counter = 42L;
+	private WatchEvent.Kind<?> kind = ENTRY_MODIFY;
+	
+	private Path workDir;
+	private Path sourceFolder;
+	private Path targetFolder;
+	private Path filePath;
+	private JbossDeployer deployer;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Logger.setFilterLevel(Logger.LEVEL_INFO);
+		
+		workDir = Files.createTempDirectory("mhd-bench-alloc");
+		sourceFolder = workDir.resolve("source");
+		targetFolder = workDir.resolve("target");
+		filePath = sourceFolder.resolve("com/acme/Sample.class");
+		FileUtils.writeByteArrayToFile(filePath.toFile(), new byte[1024]);
+		
+		ConfigurationProvider cfg = new ConfigurationProvider(null, null, null);
+		deployer = new JbossDeployer(cfg);
+		// first copy, every following event is an unchanged file
+		deployer.processEvent(filePath, kind, sourceFolder, targetFolder, "");
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir.toFile());
+	}
+	
+	@Benchmark
+	public void filteredConcatenation() {
+		Logger.debug(this.instanceName + "event #" + (this.counter) + " : " + kind.toString() + " " + filePath);
+	}
+	
+	@Benchmark
+	public void filteredParameterized() {
+		Logger.debugf("{}event #{} : {} {}", this.instanceName, this.counter, kind, filePath);
+	}
+	
+	@Benchmark
+	public void filteredSupplier() {
+		Logger.debug(() -> this.instanceName + "event #" + (this.counter) + " : " + kind.toString() + " " + filePath);
+	}
+	
+	@Benchmark
+	public Boolean processEvent() throws IOException {
+		return deployer.processEvent(filePath, kind, sourceFolder, targetFolder, "");
+	}
+}
@@ -0,0 +1,106 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.configuration.PathFilter;
+import com.ff.magicHotDeployer.engine.JbossDeployer;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * filter matching for a mix of accepted and rejected files: the legacy regex from getFilterPattern()
+ * against the absolute path, the precompiled include / exclude rules against the relative one,
+ * and the whole JbossDeployer.accepts check. every operation evaluates all the sample paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterMatchBenchmark {
+
+	private static final String SOURCE = "/home/dev/workspace/acme-web/target/classes";
+	private static final String[] SAMPLES = {
+		"com/acme/web/Sample.class",
+		"com/acme/web/Sample$1.class",
+		"com/acme/web/controller/deep/nested/package/Controller.class",
+		"META-INF/persistence.xml",
+		"com/acme/web/messages.properties",
+		"generated/com/acme/Stub.class",
+		"com/acme/web/Sample.java",
+		"static/js/app.min.js"
+	};
+	
+	private ConfigurationProvider cfg;
+	private PathFilter pathFilter;
+	private JbossDeployer deployer;
+	private String[] absolute = new String[SAMPLES.length];
+	private Path[] absolutePaths = new Path[SAMPLES.length];
+	private Path[] relativePaths = new Path[SAMPLES.length];
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		Logger.setFilterLevel(Logger.LEVEL_INFO);
+		
+		cfg = new ConfigurationProvider(null, null, null);
+		cfg.setSourceFolder(SOURCE);
+		cfg.setFilterPattern(Pattern.compile("^(?!.*/generated/).*\\.(class|xml|properties)$"));
+		
+		pathFilter = new PathFilter(
+			Arrays.asList("*.class", "*.xml", "*.properties"), 
+			Arrays.asList("generated/**")
+		);
+		
+		// deployer with the include / exclude rules only
+		ConfigurationProvider rulesCfg = new ConfigurationProvider(null, null, null);
+		rulesCfg.setSourceFolder(SOURCE);
+		rulesCfg.setPathFilter(pathFilter);
+		deployer = new JbossDeployer(rulesCfg);
+		
+		for (int i = 0; i < SAMPLES.length; i ++) {
+			absolute[i] = SOURCE + "/" + SAMPLES[i];
+			absolutePaths[i] = Paths.get(absolute[i]);
+			relativePaths[i] = Paths.get(SAMPLES[i]);
+		}
+	}
+	
+	@Benchmark
+	public void legacyRegex(Blackhole bh) {
+		Pattern pattern = cfg.getFilterPattern();
+		for (String path : absolute) {
+			bh.consume(pattern.matcher(path).find());
+		}
+	}
+	
+	@Benchmark
+	public void pathFilter(Blackhole bh) {
+		for (Path path : relativePaths) {
+			bh.consume(pathFilter.evaluate(path));
+		}
+	}
+	
+	@Benchmark
+	public void deployerAccepts(Blackhole bh) {
+		for (Path path : absolutePaths) {
+			bh.consume(deployer.accepts(path));
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.engine.DeploymentPathResolver;
+import com.ff.magicHotDeployer.engine.JbossDeployer;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * deployment folder lookup against a synthetic standalone/tmp/vfs/deployment tree
+ * holding several deploymentXXXX folders with a few exploded packages each:
+ * the full JbossDeployer.findDeploymentPath scan and the cached DeploymentPathResolver.resolve.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindDeploymentPathBenchmark {
+
+	private static final String PREFIX = "acme-web";
+	private static final int PACKAGES = 8;
+	
+	@Param({"1", "20"})
+	public int deployments;
+	
+	private Path jbossHome;
+	private ConfigurationProvider cfg;
+	private DeploymentPathResolver resolver;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Logger.setFilterLevel(Logger.LEVEL_INFO);
+		
+		jbossHome = Files.createTempDirectory("mhd-bench-jboss").resolve("standalone");
+		Path vfs = jbossHome.resolve("tmp/vfs/deployment");
+		
+		for (int d = 0; d < deployments; d ++) {
+			Path deployment = vfs.resolve(String.format("deployment%08x", d * 7919));
+			for (int p = 0; p < PACKAGES; p ++) {
+				String name = (p == PACKAGES - 1 ? PREFIX : "other" + p) + "-1.0.0.war";
+				Files.createDirectories(deployment.resolve(name).resolve("WEB-INF/classes"));
+			}
+			// the most recent one is picked
+			Files.setAttribute(deployment, "creationTime", FileTime.fromMillis(1000000L * (d + 1)));
+		}
+		
+		cfg = new ConfigurationProvider(null, null, null);
+		cfg.setJbossHome(jbossHome.toString());
+		cfg.setJbossDeployedPackagePrefix(PREFIX);
+		resolver = new DeploymentPathResolver(cfg);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		resolver.close();
+		FileUtils.deleteDirectory(jbossHome.getParent().toFile());
+	}
+	
+	@Benchmark
+	public Path findDeploymentPath() throws IOException {
+		return JbossDeployer.findDeploymentPath(jbossHome.toString(), PREFIX, cfg);
+	}
+	
+	@Benchmark
+	public Path cachedResolve() {
+		return resolver.resolve();
+	}
+}
@@ -0,0 +1,79 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.engine.JbossDeployer;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * JbossDeployer.hotDeployFile with the plain stream copy against the atomic zero-copy mode,
+ * for a 1 KB class file and a 50 MB jar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotDeployFileBenchmark {
+
+	@Param({"1024", "52428800"})
+	public int size;
+	
+	@Param({ConfigurationProvider.PARAM_VAL_COPY_MODE_STREAM, ConfigurationProvider.PARAM_VAL_COPY_MODE_ATOMIC})
+	public String copyMode;
+	
+	private Path workDir;
+	private File source;
+	private File target;
+	private JbossDeployer deployer;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Logger.setFilterLevel(Logger.LEVEL_SHUT_UP);
+		
+		workDir = Files.createTempDirectory("mhd-bench-copy");
+		source = workDir.resolve("source/Sample.class").toFile();
+		target = workDir.resolve("target/Sample.class").toFile();
+		
+		byte[] content = new byte[size];
+		new Random(42).nextBytes(content);
+		FileUtils.writeByteArrayToFile(source, content);
+		
+		ConfigurationProvider cfg = new ConfigurationProvider(null, null, null);
+		cfg.setFingerprintCache(false);
+		cfg.setCopyMode(copyMode);
+		deployer = new JbossDeployer(cfg);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir.toFile());
+	}
+	
+	@Benchmark
+	public Boolean hotDeployFile() throws IOException {
+		return deployer.hotDeployFile(source, target);
+	}
+}
@@ -0,0 +1,73 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * Logger.log throughput for a debug line, with debug enabled (printed to a discarding stream)
+ * and filtered out, both with the synchronous printer and the async appender.
+ * every parameter combination runs in its own fork, since async logging can't be switched off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+	@Param({"enabled", "disabled"})
+	public String level;
+	
+	@Param({"sync", "async"})
+	public String appender;
+	
+	private PrintStream originalOut;
+	private String message = "[ bench ] event #42 : ENTRY_MODIFY /home/dev/workspace/acme-web/target/classes/com/acme/Sample.class";
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		originalOut = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		
+		Logger.setFilterLevel("enabled".equals(level) ? Logger.LEVEL_DEBUG : Logger.LEVEL_INFO);
+		if ("async".equals(appender)) {
+			Logger.enableAsync(8192, false);
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		Logger.flush();
+		System.setOut(originalOut);
+	}
+	
+	@Benchmark
+	public void log() {
+		Logger.log(message, Logger.LEVEL_DEBUG);
+	}
+}
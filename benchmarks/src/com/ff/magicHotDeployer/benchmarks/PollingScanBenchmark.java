@@ -0,0 +1,123 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ff.magicHotDeployer.engine.PollingWatchService;
+import com.ff.magicHotDeployer.engine.WatchSubscriber;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * cost of a PollingWatchService scan over a synthetic tree of 100k files (1000 folders of 100 files each):
+ * with nothing changed, with 100 files touched before each scan, and a plain walk reading the same
+ * attributes without keeping or comparing anything, as a lower bound.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PollingScanBenchmark {
+
+	private static final int FOLDERS = 1000;
+	private static final int TOUCHED = 100;
+
+	@Param({"100000"})
+	public int files;
+
+	private Path workDir;
+	private PollingWatchService poller;
+	private long events = 0L;
+	private long tick = 0L;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Logger.setFilterLevel(Logger.LEVEL_SHUT_UP);
+
+		workDir = Files.createTempDirectory("mhd-bench-poll");
+		byte[] content = new byte[64];
+		int perFolder = files / FOLDERS;
+		for (int f = 0; f < FOLDERS; f ++) {
+			Path folder = workDir.resolve("module" + (f / 100) + "/com/acme/pkg" + f);
+			Files.createDirectories(folder);
+			for (int i = 0; i < perFolder; i ++) {
+				Files.write(folder.resolve("Class" + i + ".class"), content);
+			}
+		}
+
+		// an interval long enough for the scheduled scans to stay out of the way
+		poller = new PollingWatchService("bench", TimeUnit.HOURS.toMillis(1));
+		poller.subscribe(new WatchSubscriber() {
+			@Override
+			public void onEvent(Path path, WatchEvent.Kind<?> kind) {
+				events ++;
+			}
+			@Override
+			public void onOverflow(Path folder) {
+			}
+			@Override
+			public void onClosed() {
+			}
+		}, workDir, true, null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(workDir.toFile());
+	}
+
+	@Benchmark
+	public long scanUnchanged() {
+		poller.poll();
+		return events;
+	}
+
+	@Benchmark
+	public long scanTouched() throws IOException {
+		// spread over different folders, the mtime moves forward at every call
+		tick ++;
+		FileTime time = FileTime.fromMillis(1000000000000L + tick * 1000L);
+		for (int i = 0; i < TOUCHED; i ++) {
+			Path folder = workDir.resolve("module" + (i * 10 / 100) + "/com/acme/pkg" + (i * 10));
+			Files.setLastModifiedTime(folder.resolve("Class" + (i % 10) + ".class"), time);
+		}
+		poller.poll();
+		return events;
+	}
+
+	@Benchmark
+	public long walkOnly() throws IOException {
+		final long[] total = new long[1];
+		Files.walkFileTree(workDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				total[0] += attrs.size() ^ attrs.lastModifiedTime().toMillis();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return total[0];
+	}
+}
@@ -0,0 +1,79 @@
+package com.ff.magicHotDeployer.benchmarks;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.engine.JbossDeployer;
+import com.ff.magicHotDeployer.engine.SourceRouter;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * source to target path mapping for shallow and deep source files:
+ * the URI based JbossDeployer.reflectSourceToTargetPath against the SourceRouter trie used for events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectPathBenchmark {
+
+	@Param({"1", "12"})
+	public int depth;
+	
+	private String sourceBase = "/home/dev/workspace/acme-web/src/main/webapp";
+	private String targetBase = "/opt/jboss/standalone/tmp/vfs/deployment/deployment1a2b3c4d/acme-web-1.0.0.war";
+	private String sourcePath;
+	private Path sourceFile;
+	private Path deployment;
+	private SourceRouter router;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		Logger.setFilterLevel(Logger.LEVEL_INFO);
+		
+		StringBuilder path = new StringBuilder(sourceBase);
+		for (int i = 0; i < depth; i ++) {
+			path.append("/folder").append(i);
+		}
+		sourcePath = path.append("/Sample.class").toString();
+		sourceFile = Paths.get(sourcePath);
+		
+		ConfigurationProvider cfg = new ConfigurationProvider(null, null, null);
+		cfg.setSourceFolder(sourceBase);
+		cfg.setJbossDeployedSubpath("/WEB-INF/classes");
+		router = new SourceRouter(cfg);
+		deployment = Paths.get(targetBase);
+	}
+	
+	@Benchmark
+	public Path reflectSourceToTargetPath() {
+		return JbossDeployer.reflectSourceToTargetPath(sourcePath, sourceBase, targetBase + "/WEB-INF/classes");
+	}
+	
+	@Benchmark
+	public Path routeAndResolve() {
+		return router.route(sourceFile).toTarget(sourceFile, deployment);
+	}
+	
+	@Benchmark
+	public SourceRouter.Route routeOnly() {
+		return router.route(sourceFile);
+	}
+}
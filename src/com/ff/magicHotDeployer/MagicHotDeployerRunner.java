@@ -6,6 +6,7 @@ import java.util.prefs.BackingStoreException;
 import org.apache.commons.cli.CommandLine;
 import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
 import com.ff.magicHotDeployer.engine.EngineLoader;
+import com.ff.magicHotDeployer.engine.EngineSupervisor;
 import com.ff.magicHotDeployer.engine.RunnableEngineInstance;
 import com.ff.magicHotDeployer.logging.Logger;
 import com.ff.magicHotDeployer.updater.UpdateChecker;
@@ -32,37 +33,16 @@ public class MagicHotDeployerRunner {
 		
 		Logger.debug(instances.size() + " instances configured and ready to go");
 		
-		for (RunnableEngineInstance instance : instances) {
-			instance.start();
-		}
+		EngineSupervisor supervisor = new EngineSupervisor();
+		supervisor.start(instances);
 		
-		while (true) {
-			monitorEnginesIdleCycle();
-			monitorEngines(instances);
-		}
-	}
-	
-	private static void monitorEngines(List<RunnableEngineInstance> instances) {
-		Boolean atLeastOneAlive = false;
-		
-		for (RunnableEngineInstance instance : instances) {
-			if (instance.isAlive()) {
-				atLeastOneAlive = true;
-				break;
-			}
-		}
-		
-		if (!atLeastOneAlive) {
-			Logger.info("no alive instances, exiting");
-			System.exit(1);
-		}
-	}
-	
-	private static void monitorEnginesIdleCycle() {
 		try {
-			Thread.sleep(250);
+			supervisor.awaitTermination();
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			Thread.currentThread().interrupt();
 		}
+		
+		Logger.info("no alive instances, exiting");
+		System.exit(1);
 	}
 }
@@ -1,6 +1,8 @@
 package com.ff.magicHotDeployer.configuration;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.prefs.Preferences;
 import java.util.regex.Pattern;
 
@@ -25,20 +27,83 @@ public class ConfigurationProvider {
 	public final static String PARAM_DEST_PACKAGE_PREFIX = "destPackagePrefix";
 	public final static String PARAM_RECURSIVE = "recursive";
 	public final static String PARAM_FILTER = "filter";
+	public final static String PARAM_INCLUDE = "include";
+	public final static String PARAM_EXCLUDE = "exclude";
 	public final static String PARAM_LOG_LEVEL = "logLevel";
+	public final static String PARAM_LOG_ASYNC = "logAsync";
+	public final static String PARAM_LOG_BUFFER_SIZE = "logBufferSize";
+	public final static String PARAM_LOG_OVERFLOW = "logOverflow";
 	public final static String PARAM_INSTANCE_NAME = "name";
 	public final static String PARAM_DEST_ABSOLUTE = "fixedTarget";
 	public final static String PARAM_WATCH_FROM = "watchFrom";
 	public final static String PARAM_MAX_RETRIES = "maxRetries";
 	public final static String PARAM_RETRY_DELAY = "retryDelay";
+	public final static String PARAM_RETRY_MAX_DELAY = "retryMaxDelay";
+	public final static String PARAM_RETRY_JITTER = "retryJitter";
+	public final static String PARAM_COALESCE_WINDOW = "coalesceWindow";
+	public final static String PARAM_WORKERS = "workers";
+	public final static String PARAM_QUEUE_SIZE = "queueSize";
+	public final static String PARAM_FINGERPRINT_CACHE = "fingerprintCache";
+	public final static String PARAM_FINGERPRINT_INDEX = "fingerprintIndex";
+	public final static String PARAM_FINGERPRINT_INDEX_FILE = "fingerprintIndexFile";
+	public final static String PARAM_COPY_MODE = "copyMode";
+	public final static String PARAM_EXCLUDE_DIRS = "excludeDirs";
+	public final static String PARAM_SYNC_ON_STARTUP = "syncOnStartup";
+	public final static String PARAM_SYNC_DELETE = "syncDelete";
+	public final static String PARAM_BATCH_QUIET_PERIOD = "batchQuietPeriod";
+	public final static String PARAM_BATCH_MARKER = "batchMarker";
+	public final static String PARAM_BATCH_TOUCH = "batchTouch";
+	public final static String PARAM_BATCH_COMMAND = "batchCommand";
+	public final static String PARAM_MAPPINGS = "mappings";
+	public final static String PARAM_VIRTUAL_WORKERS = "virtualWorkers";
+	public final static String PARAM_MAX_RESTARTS = "maxRestarts";
+	public final static String PARAM_RESTART_DELAY = "restartDelay";
+	public final static String PARAM_RESTART_MAX_DELAY = "restartMaxDelay";
+	public final static String PARAM_DELETE_MODE = "deleteMode";
+	public final static String PARAM_TRASH_FOLDER = "trashFolder";
+	public final static String PARAM_RENAME_WINDOW = "renameWindow";
+	public final static String PARAM_STORM_RATE = "stormRate";
+	public final static String PARAM_STORM_QUEUE_DEPTH = "stormQueueDepth";
+	public final static String PARAM_STORM_QUIET_PERIOD = "stormQuietPeriod";
+	public final static String PARAM_STORM_MAX_FOLDERS = "stormMaxFolders";
+	public final static String PARAM_WATCH_MODE = "watchMode";
+	public final static String PARAM_POLL_INTERVAL = "pollInterval";
 	
 	// for jboss 4 support
 	public final static String PARAM_DEPLOY_MODE = "deployMode";
 	
 	public final static String PARAM_VAL_DEPLOY_MODE_JBOSS4 = "jboss4";
 	
+	public final static String PARAM_VAL_COPY_MODE_STREAM = "stream";
+	public final static String PARAM_VAL_COPY_MODE_ATOMIC = "atomic";
+	
+	public final static String PARAM_VAL_DELETE_MODE_SYNC = "sync";
+	public final static String PARAM_VAL_DELETE_MODE_TRASH = "trash";
+	
+	public final static String PARAM_VAL_WATCH_MODE_NATIVE = "native";
+	public final static String PARAM_VAL_WATCH_MODE_POLLING = "polling";
+	
+	public final static String PARAM_VAL_LOG_OVERFLOW_BLOCK = "block";
+	public final static String PARAM_VAL_LOG_OVERFLOW_DROP = "drop";
+	
 	public final static Integer DEFAULT_MAX_RETRIES = 3;
 	public final static Integer DEFAULT_RETRY_DELAY = 100;
+	public final static Integer DEFAULT_RETRY_MAX_DELAY = 5000;
+	public final static Integer DEFAULT_RETRY_JITTER = 20;
+	public final static Integer DEFAULT_COALESCE_WINDOW = 0;
+	public final static Integer DEFAULT_WORKERS = 1;
+	public final static Integer DEFAULT_QUEUE_SIZE = 1024;
+	public final static Integer DEFAULT_LOG_BUFFER_SIZE = 8192;
+	public final static Integer DEFAULT_BATCH_QUIET_PERIOD = 0;
+	public final static Integer DEFAULT_MAX_RESTARTS = 5;
+	public final static Integer DEFAULT_RESTART_DELAY = 1000;
+	public final static Integer DEFAULT_RESTART_MAX_DELAY = 60000;
+	public final static Integer DEFAULT_RENAME_WINDOW = 0;
+	public final static Integer DEFAULT_STORM_RATE = 0;
+	public final static Integer DEFAULT_STORM_QUEUE_DEPTH = 0;
+	public final static Integer DEFAULT_STORM_QUIET_PERIOD = 1000;
+	public final static Integer DEFAULT_STORM_MAX_FOLDERS = 10000;
+	public final static Integer DEFAULT_POLL_INTERVAL = 2000;
 	
 	public static Integer instanceIndex = 0;
 	
@@ -54,11 +119,42 @@ public class ConfigurationProvider {
 	private String filter = null;
 	private String name = null;
 	private Pattern filterPattern;
+	private PathFilter pathFilter = new PathFilter(null, null);
 	private String fixedTarget = null;
 	private String watchFrom = null;
 	private Integer maxRetries = null;
 	private Integer retryDelay = null;
+	private Integer retryMaxDelay = DEFAULT_RETRY_MAX_DELAY;
+	private Integer retryJitter = DEFAULT_RETRY_JITTER;
 	private String deployMode = null;
+	private Integer coalesceWindow = null;
+	private Integer workers = null;
+	private Integer queueSize = null;
+	private Boolean fingerprintCache = false;
+	private Boolean fingerprintIndex = false;
+	private String fingerprintIndexFile = null;
+	private String copyMode = PARAM_VAL_COPY_MODE_STREAM;
+	private List<String> excludeDirs = new ArrayList<String>();
+	private Boolean syncOnStartup = false;
+	private Boolean syncDelete = false;
+	private Integer batchQuietPeriod = DEFAULT_BATCH_QUIET_PERIOD;
+	private String batchMarker = null;
+	private String batchTouch = null;
+	private String batchCommand = null;
+	private List<SourceMapping> mappings = new ArrayList<SourceMapping>();
+	private Boolean virtualWorkers = false;
+	private Integer maxRestarts = DEFAULT_MAX_RESTARTS;
+	private Integer restartDelay = DEFAULT_RESTART_DELAY;
+	private Integer restartMaxDelay = DEFAULT_RESTART_MAX_DELAY;
+	private String deleteMode = PARAM_VAL_DELETE_MODE_SYNC;
+	private String trashFolder = null;
+	private Integer renameWindow = DEFAULT_RENAME_WINDOW;
+	private Integer stormRate = DEFAULT_STORM_RATE;
+	private Integer stormQueueDepth = DEFAULT_STORM_QUEUE_DEPTH;
+	private Integer stormQuietPeriod = DEFAULT_STORM_QUIET_PERIOD;
+	private Integer stormMaxFolders = DEFAULT_STORM_MAX_FOLDERS;
+	private String watchMode = PARAM_VAL_WATCH_MODE_NATIVE;
+	private Integer pollInterval = DEFAULT_POLL_INTERVAL;
 	
 	public static String getCurrentPath() {
 		return System.getProperty("user.dir");
@@ -105,10 +201,33 @@ public class ConfigurationProvider {
 		}
 		return raw;
 	}
+	private Boolean readBooleanFromPrioritizedSource(String key, Boolean def) {
+		String raw = readFromPrioritizedSource(key);
+		if (raw == null || "".equals(raw.trim())) return def;
+		return "true".equalsIgnoreCase(raw.trim());
+	}
+	private List<String> readListFromPrioritizedSource(String key) {
+		List<String> values = new ArrayList<String>();
+		String raw = readFromPrioritizedSource(key);
+		if (raw == null) return values;
+		for (String value : raw.split(",")) {
+			if (!"".equals(value.trim())) values.add(value.trim());
+		}
+		return values;
+	}
+	private Integer readIntegerFromPrioritizedSource(String key, Integer def) {
+		String raw = readFromPrioritizedSource(key);
+		if (raw == null || "".equals(raw.trim())) return def;
+		try {
+			return Integer.valueOf(raw.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new RuntimeException("invalid numeric value for " + key + " : " + raw, e);
+		}
+	}
 	
 	public void reload() throws InvalidFileFormatException, IOException {
 		sourceFolder = readFromPrioritizedSource(PARAM_SOURCE_FOLDER);
-		if (sourceFolder == null) throw new RuntimeException("no sourceFolders in configuration");
 		
 		jbossHome = readFromPrioritizedSource(PARAM_JBOSS_HOME);
 
@@ -117,6 +236,18 @@ public class ConfigurationProvider {
 		jbossDeployedSubpath = readFromPrioritizedSource(PARAM_DEST_SUB_FOLDER);
 		if (jbossDeployedSubpath == null) jbossDeployedSubpath = "";
 		
+		// further source -> destSub pairs deployed by the same instance
+		mappings = new ArrayList<SourceMapping>();
+		for (String raw : readListFromPrioritizedSource(PARAM_MAPPINGS)) {
+			mappings.add(SourceMapping.parse(raw));
+		}
+		if (sourceFolder == null || "".equals(sourceFolder)) {
+			if (mappings.isEmpty()) throw new RuntimeException("no sourceFolders in configuration");
+			SourceMapping first = mappings.remove(0);
+			sourceFolder = first.getSource();
+			jbossDeployedSubpath = first.getDestSub();
+		}
+		
 		fixedTarget = readFromPrioritizedSource(PARAM_DEST_ABSOLUTE);
 		if (fixedTarget != null && "".equals(fixedTarget)) fixedTarget = null;
 		
@@ -144,6 +275,85 @@ public class ConfigurationProvider {
 			retryDelay = Integer.valueOf(retryDelayStr);
 		}
 		
+		retryMaxDelay = readIntegerFromPrioritizedSource(PARAM_RETRY_MAX_DELAY, DEFAULT_RETRY_MAX_DELAY);
+		if (retryMaxDelay < retryDelay) retryMaxDelay = retryDelay;
+		
+		retryJitter = readIntegerFromPrioritizedSource(PARAM_RETRY_JITTER, DEFAULT_RETRY_JITTER);
+		if (retryJitter < 0 || retryJitter > 100) throw new RuntimeException("retryJitter must be a percentage between 0 and 100");
+		
+		coalesceWindow = readIntegerFromPrioritizedSource(PARAM_COALESCE_WINDOW, DEFAULT_COALESCE_WINDOW);
+		renameWindow = readIntegerFromPrioritizedSource(PARAM_RENAME_WINDOW, DEFAULT_RENAME_WINDOW);
+		if (renameWindow < 0) throw new RuntimeException("renameWindow can't be negative");
+		
+		stormRate = readIntegerFromPrioritizedSource(PARAM_STORM_RATE, DEFAULT_STORM_RATE);
+		if (stormRate < 0) throw new RuntimeException("stormRate can't be negative");
+		stormQueueDepth = readIntegerFromPrioritizedSource(PARAM_STORM_QUEUE_DEPTH, DEFAULT_STORM_QUEUE_DEPTH);
+		if (stormQueueDepth < 0) throw new RuntimeException("stormQueueDepth can't be negative");
+		stormQuietPeriod = readIntegerFromPrioritizedSource(PARAM_STORM_QUIET_PERIOD, DEFAULT_STORM_QUIET_PERIOD);
+		if (stormQuietPeriod < 1) throw new RuntimeException("stormQuietPeriod must be positive");
+		stormMaxFolders = readIntegerFromPrioritizedSource(PARAM_STORM_MAX_FOLDERS, DEFAULT_STORM_MAX_FOLDERS);
+		if (stormMaxFolders < 1) throw new RuntimeException("stormMaxFolders must be positive");
+		
+		watchMode = readFromPrioritizedSource(PARAM_WATCH_MODE);
+		if (watchMode == null || "".equals(watchMode)) watchMode = PARAM_VAL_WATCH_MODE_NATIVE;
+		if (!PARAM_VAL_WATCH_MODE_NATIVE.equals(watchMode) && !PARAM_VAL_WATCH_MODE_POLLING.equals(watchMode)) {
+			throw new RuntimeException("invalid watchMode " + watchMode);
+		}
+		pollInterval = readIntegerFromPrioritizedSource(PARAM_POLL_INTERVAL, DEFAULT_POLL_INTERVAL);
+		if (pollInterval < 1) throw new RuntimeException("pollInterval must be positive");
+		
+		workers = readIntegerFromPrioritizedSource(PARAM_WORKERS, DEFAULT_WORKERS);
+		if (workers < 1) throw new RuntimeException("at least one worker is required");
+		
+		queueSize = readIntegerFromPrioritizedSource(PARAM_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+		if (queueSize < 1) throw new RuntimeException("queueSize must be positive");
+		
+		virtualWorkers = readBooleanFromPrioritizedSource(PARAM_VIRTUAL_WORKERS, false);
+		
+		maxRestarts = readIntegerFromPrioritizedSource(PARAM_MAX_RESTARTS, DEFAULT_MAX_RESTARTS);
+		restartDelay = readIntegerFromPrioritizedSource(PARAM_RESTART_DELAY, DEFAULT_RESTART_DELAY);
+		restartMaxDelay = readIntegerFromPrioritizedSource(PARAM_RESTART_MAX_DELAY, DEFAULT_RESTART_MAX_DELAY);
+		if (restartMaxDelay < restartDelay) restartMaxDelay = restartDelay;
+		
+		fingerprintCache = readBooleanFromPrioritizedSource(PARAM_FINGERPRINT_CACHE, false);
+		fingerprintIndex = readBooleanFromPrioritizedSource(PARAM_FINGERPRINT_INDEX, false);
+		fingerprintIndexFile = readFromPrioritizedSource(PARAM_FINGERPRINT_INDEX_FILE);
+		if (fingerprintIndexFile != null && "".equals(fingerprintIndexFile)) fingerprintIndexFile = null;
+		
+		excludeDirs = readListFromPrioritizedSource(PARAM_EXCLUDE_DIRS);
+		
+		syncOnStartup = readBooleanFromPrioritizedSource(PARAM_SYNC_ON_STARTUP, false);
+		syncDelete = readBooleanFromPrioritizedSource(PARAM_SYNC_DELETE, false);
+		
+		batchQuietPeriod = readIntegerFromPrioritizedSource(PARAM_BATCH_QUIET_PERIOD, DEFAULT_BATCH_QUIET_PERIOD);
+		if (batchQuietPeriod < 0) throw new RuntimeException("batchQuietPeriod can't be negative");
+		batchMarker = readFromPrioritizedSource(PARAM_BATCH_MARKER);
+		if (batchMarker != null && "".equals(batchMarker)) batchMarker = null;
+		batchTouch = readFromPrioritizedSource(PARAM_BATCH_TOUCH);
+		if (batchTouch != null && "".equals(batchTouch)) batchTouch = null;
+		batchCommand = readFromPrioritizedSource(PARAM_BATCH_COMMAND);
+		if (batchCommand != null && "".equals(batchCommand)) batchCommand = null;
+		
+		copyMode = readFromPrioritizedSource(PARAM_COPY_MODE);
+		if (copyMode == null || "".equals(copyMode)) copyMode = PARAM_VAL_COPY_MODE_STREAM;
+		if (!PARAM_VAL_COPY_MODE_STREAM.equals(copyMode) && !PARAM_VAL_COPY_MODE_ATOMIC.equals(copyMode)) {
+			throw new RuntimeException("invalid copyMode " + copyMode);
+		}
+		
+		deleteMode = readFromPrioritizedSource(PARAM_DELETE_MODE);
+		if (deleteMode == null || "".equals(deleteMode)) deleteMode = PARAM_VAL_DELETE_MODE_SYNC;
+		if (!PARAM_VAL_DELETE_MODE_SYNC.equals(deleteMode) && !PARAM_VAL_DELETE_MODE_TRASH.equals(deleteMode)) {
+			throw new RuntimeException("invalid deleteMode " + deleteMode);
+		}
+		trashFolder = readFromPrioritizedSource(PARAM_TRASH_FOLDER);
+		if (trashFolder != null && "".equals(trashFolder)) trashFolder = null;
+		
+		pathFilter = new PathFilter(
+			readListFromPrioritizedSource(PARAM_INCLUDE), 
+			readListFromPrioritizedSource(PARAM_EXCLUDE)
+		);
+		
+		// legacy single regex, matched against the absolute path: prefer include / exclude
 		filter = readFromPrioritizedSource(PARAM_FILTER);
 		// filter can be null
 		if (filter != null && !"".equals(filter)) {
@@ -172,6 +382,19 @@ public class ConfigurationProvider {
 			Logger.setFilterLevel(level);
 		}
 		
+		// logging is global: the first instance asking for async logging switches it on
+		if (readBooleanFromPrioritizedSource(PARAM_LOG_ASYNC, false)) {
+			String overflow = readFromPrioritizedSource(PARAM_LOG_OVERFLOW);
+			if (overflow == null || "".equals(overflow)) overflow = PARAM_VAL_LOG_OVERFLOW_BLOCK;
+			if (!PARAM_VAL_LOG_OVERFLOW_BLOCK.equals(overflow) && !PARAM_VAL_LOG_OVERFLOW_DROP.equals(overflow)) {
+				throw new RuntimeException("invalid logOverflow " + overflow);
+			}
+			Logger.enableAsync(
+				readIntegerFromPrioritizedSource(PARAM_LOG_BUFFER_SIZE, DEFAULT_LOG_BUFFER_SIZE),
+				PARAM_VAL_LOG_OVERFLOW_DROP.equals(overflow)
+			);
+		}
+		
 		Logger.debug("parsed configuration voices");
 		
 		if (Logger.isEnabled(Logger.LEVEL_DEBUG)) {
@@ -230,6 +453,48 @@ public class ConfigurationProvider {
         return options;
 	}
 	
+	/**
+	 * every source folder of the instance: source / destSub first, then the mappings setting
+	 */
+	public List<SourceMapping> getMappings() {
+		List<SourceMapping> all = new ArrayList<SourceMapping>(mappings.size() + 1);
+		if (sourceFolder != null) {
+			all.add(new SourceMapping(sourceFolder, jbossDeployedSubpath));
+		}
+		all.addAll(mappings);
+		return all;
+	}
+	
+	public void setMappings(List<SourceMapping> mappings) {
+		this.mappings = mappings;
+	}
+	
+	/**
+	 * events are grouped in batches ended by a quiet period or by the marker file
+	 */
+	public Boolean isBatching() {
+		return batchQuietPeriod > 0 || batchMarker != null;
+	}
+	
+	public Boolean isAtomicCopy() {
+		return PARAM_VAL_COPY_MODE_ATOMIC.equals(copyMode);
+	}
+	
+	/**
+	 * storms are detected by event rate and / or by queue depth
+	 */
+	public Boolean isStormDetection() {
+		return stormRate > 0 || stormQueueDepth > 0;
+	}
+	
+	public Boolean isPollingWatch() {
+		return PARAM_VAL_WATCH_MODE_POLLING.equals(watchMode);
+	}
+	
+	public Boolean isTrashDelete() {
+		return PARAM_VAL_DELETE_MODE_TRASH.equals(deleteMode);
+	}
+	
 	public Boolean isJboss4() {
 		return (deployMode != null && deployMode.equals(PARAM_VAL_DEPLOY_MODE_JBOSS4));
 	}
@@ -256,6 +521,14 @@ public class ConfigurationProvider {
 		this.filterPattern = filterPattern;
 	}
 
+	public PathFilter getPathFilter() {
+		return pathFilter;
+	}
+
+	public void setPathFilter(PathFilter pathFilter) {
+		this.pathFilter = pathFilter;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -329,5 +602,181 @@ public class ConfigurationProvider {
 	public void setRetryDelay(Integer retryDelay) {
 		this.retryDelay = retryDelay;
 	}
+	public Integer getRetryMaxDelay() {
+		return retryMaxDelay;
+	}
+	public void setRetryMaxDelay(Integer retryMaxDelay) {
+		this.retryMaxDelay = retryMaxDelay;
+	}
+	public Integer getRetryJitter() {
+		return retryJitter;
+	}
+	public void setRetryJitter(Integer retryJitter) {
+		this.retryJitter = retryJitter;
+	}
+	public Integer getCoalesceWindow() {
+		return coalesceWindow;
+	}
+	public void setCoalesceWindow(Integer coalesceWindow) {
+		this.coalesceWindow = coalesceWindow;
+	}
+	public Integer getWorkers() {
+		return workers;
+	}
+	public void setWorkers(Integer workers) {
+		this.workers = workers;
+	}
+	public Integer getQueueSize() {
+		return queueSize;
+	}
+	public void setQueueSize(Integer queueSize) {
+		this.queueSize = queueSize;
+	}
+	public Boolean getFingerprintCache() {
+		return fingerprintCache;
+	}
+	public void setFingerprintCache(Boolean fingerprintCache) {
+		this.fingerprintCache = fingerprintCache;
+	}
+	public List<String> getExcludeDirs() {
+		return excludeDirs;
+	}
+	public void setExcludeDirs(List<String> excludeDirs) {
+		this.excludeDirs = excludeDirs;
+	}
+	public Boolean getSyncOnStartup() {
+		return syncOnStartup;
+	}
+	public void setSyncOnStartup(Boolean syncOnStartup) {
+		this.syncOnStartup = syncOnStartup;
+	}
+	public Boolean getSyncDelete() {
+		return syncDelete;
+	}
+	public void setSyncDelete(Boolean syncDelete) {
+		this.syncDelete = syncDelete;
+	}
+	public String getCopyMode() {
+		return copyMode;
+	}
+	public void setCopyMode(String copyMode) {
+		this.copyMode = copyMode;
+	}
+	
+	public Integer getBatchQuietPeriod() {
+		return batchQuietPeriod;
+	}
+	public void setBatchQuietPeriod(Integer batchQuietPeriod) {
+		this.batchQuietPeriod = batchQuietPeriod;
+	}
+	public String getBatchMarker() {
+		return batchMarker;
+	}
+	public void setBatchMarker(String batchMarker) {
+		this.batchMarker = batchMarker;
+	}
+	public String getBatchTouch() {
+		return batchTouch;
+	}
+	public void setBatchTouch(String batchTouch) {
+		this.batchTouch = batchTouch;
+	}
+	public String getBatchCommand() {
+		return batchCommand;
+	}
+	public void setBatchCommand(String batchCommand) {
+		this.batchCommand = batchCommand;
+	}
+	
+	public Boolean getVirtualWorkers() {
+		return virtualWorkers;
+	}
+	public void setVirtualWorkers(Boolean virtualWorkers) {
+		this.virtualWorkers = virtualWorkers;
+	}
+	public Integer getMaxRestarts() {
+		return maxRestarts;
+	}
+	public void setMaxRestarts(Integer maxRestarts) {
+		this.maxRestarts = maxRestarts;
+	}
+	public Integer getRestartDelay() {
+		return restartDelay;
+	}
+	public void setRestartDelay(Integer restartDelay) {
+		this.restartDelay = restartDelay;
+	}
+	public Integer getRestartMaxDelay() {
+		return restartMaxDelay;
+	}
+	public void setRestartMaxDelay(Integer restartMaxDelay) {
+		this.restartMaxDelay = restartMaxDelay;
+	}
+	public String getDeleteMode() {
+		return deleteMode;
+	}
+	public void setDeleteMode(String deleteMode) {
+		this.deleteMode = deleteMode;
+	}
+	public String getTrashFolder() {
+		return trashFolder;
+	}
+	public void setTrashFolder(String trashFolder) {
+		this.trashFolder = trashFolder;
+	}
+	public Integer getRenameWindow() {
+		return renameWindow;
+	}
+	public void setRenameWindow(Integer renameWindow) {
+		this.renameWindow = renameWindow;
+	}
+	public Integer getStormRate() {
+		return stormRate;
+	}
+	public void setStormRate(Integer stormRate) {
+		this.stormRate = stormRate;
+	}
+	public Integer getStormQueueDepth() {
+		return stormQueueDepth;
+	}
+	public void setStormQueueDepth(Integer stormQueueDepth) {
+		this.stormQueueDepth = stormQueueDepth;
+	}
+	public Integer getStormQuietPeriod() {
+		return stormQuietPeriod;
+	}
+	public void setStormQuietPeriod(Integer stormQuietPeriod) {
+		this.stormQuietPeriod = stormQuietPeriod;
+	}
+	public Integer getStormMaxFolders() {
+		return stormMaxFolders;
+	}
+	public void setStormMaxFolders(Integer stormMaxFolders) {
+		this.stormMaxFolders = stormMaxFolders;
+	}
+	public Boolean getFingerprintIndex() {
+		return fingerprintIndex;
+	}
+	public void setFingerprintIndex(Boolean fingerprintIndex) {
+		this.fingerprintIndex = fingerprintIndex;
+	}
+	public String getFingerprintIndexFile() {
+		return fingerprintIndexFile;
+	}
+	public void setFingerprintIndexFile(String fingerprintIndexFile) {
+		this.fingerprintIndexFile = fingerprintIndexFile;
+	}
+	public String getWatchMode() {
+		return watchMode;
+	}
+	public void setWatchMode(String watchMode) {
+		this.watchMode = watchMode;
+	}
+	public Integer getPollInterval() {
+		return pollInterval;
+	}
+	public void setPollInterval(Integer pollInterval) {
+		this.pollInterval = pollInterval;
+	}
 	
 }
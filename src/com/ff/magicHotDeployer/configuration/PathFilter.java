@@ -0,0 +1,212 @@
+package com.ff.magicHotDeployer.configuration;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * precompiled include / exclude rules, matched against paths relative to the source folder.
+ *
+ * the same way as FolderExclusions, a rule matching a folder covers everything inside it:
+ * rules without a separator match a file or folder name at any depth ("*.class", "generated"),
+ * the others match from the source folder down ("WEB-INF/lib"); a leading "/" anchors a plain name
+ * to the source folder ("/static"), and a trailing "/" or "/**" makes no difference.
+ *
+ * rules are sorted at compile time into the cheapest structure able to answer them:
+ * extensions ("*.class") and plain names (".git" included) go into hash sets, anchored literals
+ * into a trie of path segments, anything else is kept as a glob.
+ *
+ * include rules apply to files only: a path not matching them may still be a folder,
+ * which the caller has to find out by itself (see Decision.FOLDER_ONLY).
+ */
+public class PathFilter {
+
+	public enum Decision {
+		/** matches an exclude rule, whatever it is */
+		EXCLUDED,
+		/** passes the filter */
+		INCLUDED,
+		/** not matching any include rule: passes only if it is a folder */
+		FOLDER_ONLY
+	}
+	
+	private Rules includes;
+	private Rules excludes;
+	
+	public PathFilter(List<String> includes, List<String> excludes) {
+		this.includes = new Rules(includes);
+		this.excludes = new Rules(excludes);
+	}
+	
+	public Boolean isEmpty() {
+		return includes.isEmpty() && excludes.isEmpty();
+	}
+	
+	public Decision evaluate(Path relative) {
+		if (!excludes.isEmpty() && excludes.matches(relative)) {
+			return Decision.EXCLUDED;
+		}
+		if (includes.isEmpty() || includes.matches(relative)) {
+			return Decision.INCLUDED;
+		}
+		return Decision.FOLDER_ONLY;
+	}
+	
+	/**
+	 * @param relative path of a regular file, relative to the source folder
+	 */
+	public Boolean acceptsFile(Path relative) {
+		return evaluate(relative) == Decision.INCLUDED;
+	}
+	
+	private static class Rules {
+		
+		private Set<String> extensions = new HashSet<String>();
+		private Set<String> names = new HashSet<String>();
+		private TrieNode prefixes = new TrieNode();
+		private List<PathMatcher> nameGlobs = new ArrayList<PathMatcher>();
+		private List<PathMatcher> pathGlobs = new ArrayList<PathMatcher>();
+		private Boolean empty = true;
+		
+		private Rules(List<String> rules) {
+			if (rules == null) {
+				return;
+			}
+			for (String rule : rules) {
+				add(rule.trim().replace('\\', '/'));
+			}
+		}
+		
+		private void add(String rule) {
+			if (rule.isEmpty()) {
+				return;
+			}
+			if (rule.endsWith("/**")) rule = rule.substring(0, rule.length() - 3);
+			else if (rule.endsWith("/")) rule = rule.substring(0, rule.length() - 1);
+			Boolean anchored = rule.startsWith("/");
+			if (anchored) rule = rule.substring(1);
+			if (rule.isEmpty()) {
+				return;
+			}
+			empty = false;
+			Boolean anyDepth = !anchored && rule.indexOf('/') < 0;
+			
+			// only "*.ext" is an extension: ".git" or ".metadata" is a name, as in FolderExclusions
+			String extension = (rule.startsWith("*.") ? rule.substring(2) : null);
+			
+			if (anyDepth && extension != null && !hasWildcards(extension) && extension.indexOf('.') < 0) {
+				extensions.add(extension);
+				return;
+			}
+			
+			if (!hasWildcards(rule)) {
+				if (anyDepth) {
+					names.add(rule);
+					return;
+				}
+				TrieNode node = prefixes;
+				for (String segment : rule.split("/")) {
+					if (segment.isEmpty()) continue;
+					node = node.child(segment);
+				}
+				node.terminal = true;
+				return;
+			}
+			
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rule);
+			if (anyDepth) {
+				nameGlobs.add(matcher);
+			}
+			else {
+				pathGlobs.add(matcher);
+			}
+		}
+		
+		private Boolean isEmpty() {
+			return empty;
+		}
+		
+		private Boolean matches(Path relative) {
+			if (relative.getFileName() == null) {
+				return false;
+			}
+			int count = relative.getNameCount();
+			
+			if (!extensions.isEmpty() || !names.isEmpty() || !nameGlobs.isEmpty()) {
+				// every name in the path, the file itself and the folders holding it
+				for (int i = count - 1; i >= 0; i --) {
+					Path name = relative.getName(i);
+					String segment = name.toString();
+					if (!extensions.isEmpty()) {
+						int dot = segment.lastIndexOf('.');
+						if (dot >= 0 && extensions.contains(segment.substring(dot + 1))) {
+							return true;
+						}
+					}
+					if (names.contains(segment)) {
+						return true;
+					}
+					for (PathMatcher matcher : nameGlobs) {
+						if (matcher.matches(name)) return true;
+					}
+				}
+			}
+			
+			if (prefixes.children != null) {
+				TrieNode node = prefixes;
+				for (int i = 0; i < relative.getNameCount() && node != null; i ++) {
+					node = node.get(relative.getName(i).toString());
+					if (node != null && node.terminal) {
+						return true;
+					}
+				}
+			}
+			
+			if (!pathGlobs.isEmpty()) {
+				// the path itself and the folders holding it
+				for (int i = count; i > 0; i --) {
+					Path path = (i == count ? relative : relative.subpath(0, i));
+					for (PathMatcher matcher : pathGlobs) {
+						if (matcher.matches(path)) return true;
+					}
+				}
+			}
+			return false;
+		}
+		
+		private static Boolean hasWildcards(String glob) {
+			for (int i = 0; i < glob.length(); i ++) {
+				switch (glob.charAt(i)) {
+					case '*': case '?': case '[': case '{': return true;
+					default: break;
+				}
+			}
+			return false;
+		}
+	}
+	
+	private static class TrieNode {
+		private Map<String, TrieNode> children = null;
+		private boolean terminal = false;
+		
+		private TrieNode get(String segment) {
+			return children == null ? null : children.get(segment);
+		}
+		
+		private TrieNode child(String segment) {
+			if (children == null) children = new HashMap<String, TrieNode>();
+			TrieNode node = children.get(segment);
+			if (node == null) {
+				node = new TrieNode();
+				children.put(segment, node);
+			}
+			return node;
+		}
+	}
+}
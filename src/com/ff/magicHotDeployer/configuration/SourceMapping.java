@@ -0,0 +1,45 @@
+package com.ff.magicHotDeployer.configuration;
+
+/**
+ * a source folder and the sub path of the deployed package it is reflected into.
+ *
+ * written as "source -> destSub" in the mappings setting, the destSub part can be omitted
+ * to deploy straight into the package root.
+ */
+public class SourceMapping {
+
+	public static final String SEPARATOR = "->";
+	
+	private String source;
+	private String destSub;
+	
+	public SourceMapping(String source, String destSub) {
+		this.source = source;
+		this.destSub = (destSub != null ? destSub : "");
+	}
+	
+	public static SourceMapping parse(String raw) {
+		int separator = raw.indexOf(SEPARATOR);
+		if (separator < 0) {
+			return new SourceMapping(raw.trim(), "");
+		}
+		String source = raw.substring(0, separator).trim();
+		if ("".equals(source)) {
+			throw new RuntimeException("invalid mapping, missing source folder : " + raw);
+		}
+		return new SourceMapping(source, raw.substring(separator + SEPARATOR.length()).trim());
+	}
+	
+	public String getSource() {
+		return source;
+	}
+	
+	public String getDestSub() {
+		return destSub;
+	}
+	
+	@Override
+	public String toString() {
+		return source + " " + SEPARATOR + " " + ("".equals(destSub) ? "/" : destSub);
+	}
+}
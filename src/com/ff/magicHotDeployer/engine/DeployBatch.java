@@ -0,0 +1,78 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a group of events produced by a single build, applied as one unit.
+ *
+ * each event reports back when it has been deployed or has run out of retries:
+ * the batch is complete when the last one does.
+ */
+public class DeployBatch {
+
+	private Long id;
+	private Integer size;
+	private Long raw;
+	private AtomicInteger remaining;
+	private AtomicInteger failed = new AtomicInteger();
+	private long started = System.nanoTime();
+	private long elapsed = 0L;
+	private CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * @param size events to be applied
+	 * @param raw watch events folded into them
+	 */
+	public DeployBatch(Long id, Integer size, Long raw) {
+		this.id = id;
+		this.size = size;
+		this.raw = raw;
+		this.remaining = new AtomicInteger(size);
+	}
+
+	/**
+	 * @return true if this was the last event of the batch
+	 */
+	public Boolean eventDone(Boolean success) {
+		if (!success) {
+			failed.incrementAndGet();
+		}
+		if (remaining.decrementAndGet() != 0) {
+			return false;
+		}
+		elapsed = System.nanoTime() - started;
+		done.countDown();
+		return true;
+	}
+
+	public Boolean isComplete() {
+		return done.getCount() == 0;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Integer getSize() {
+		return size;
+	}
+
+	public Long getRaw() {
+		return raw;
+	}
+
+	public Integer getFailed() {
+		return failed.get();
+	}
+
+	public Long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsed);
+	}
+
+	@Override
+	public String toString() {
+		return "batch #" + id + " : " + size + " events (" + raw + " raw), " + failed + " failed, applied in " + getElapsedMillis() + " ms";
+	}
+}
@@ -0,0 +1,100 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * a single (possibly coalesced) change to be reflected on the deployment.
+ */
+public class DeployEvent {
+
+	private Path path;
+	private WatchEvent.Kind<?> kind;
+	private Long receivedAt;
+	private Boolean replacement = false;
+	private Integer attempt = 1;
+	private DeployBatch batch = null;
+	private Path movedFrom = null;
+
+	public DeployEvent(Path path, WatchEvent.Kind<?> kind) {
+		this.path = path;
+		this.kind = kind;
+		this.receivedAt = System.nanoTime();
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public void setPath(Path path) {
+		this.path = path;
+	}
+
+	public WatchEvent.Kind<?> getKind() {
+		return kind;
+	}
+
+	public void setKind(WatchEvent.Kind<?> kind) {
+		this.kind = kind;
+	}
+
+	/**
+	 * System.nanoTime() of the first raw event folded into this one
+	 */
+	public Long getReceivedAt() {
+		return receivedAt;
+	}
+
+	public void setReceivedAt(Long receivedAt) {
+		this.receivedAt = receivedAt;
+	}
+
+	/**
+	 * true when the path has been deleted and then created again in the same window
+	 */
+	public Boolean isReplacement() {
+		return replacement;
+	}
+
+	public void setReplacement(Boolean replacement) {
+		this.replacement = replacement;
+	}
+
+	public Integer getAttempt() {
+		return attempt;
+	}
+
+	public void setAttempt(Integer attempt) {
+		this.attempt = attempt;
+	}
+
+	/**
+	 * the batch this event belongs to, null when batching is disabled
+	 */
+	public DeployBatch getBatch() {
+		return batch;
+	}
+
+	public void setBatch(DeployBatch batch) {
+		this.batch = batch;
+	}
+
+	/**
+	 * for a folder created by renaming or moving a deleted one, the deleted folder
+	 */
+	public Path getMovedFrom() {
+		return movedFrom;
+	}
+
+	public void setMovedFrom(Path movedFrom) {
+		this.movedFrom = movedFrom;
+	}
+
+	@Override
+	public String toString() {
+		if (movedFrom != null) {
+			return kind.toString() + " " + path + " (moved from " + movedFrom + ")";
+		}
+		return kind.toString() + " " + path;
+	}
+}
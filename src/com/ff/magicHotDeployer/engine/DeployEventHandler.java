@@ -0,0 +1,6 @@
+package com.ff.magicHotDeployer.engine;
+
+public interface DeployEventHandler {
+
+	public void handle(DeployEvent event);
+}
@@ -0,0 +1,229 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * remembers size, modification time and content hash of the last file deployed to each target path,
+ * so that sources rewritten with identical bytes are not copied again.
+ *
+ * hashes are computed lazily: a plain copy only records size and mtime, contents are hashed
+ * only when a source comes back with the same size but a different mtime.
+ *
+ * with an index, what is recorded is also written to disk and read back when the deployment is first
+ * used after a restart, so that files deployed by a previous run are still known.
+ */
+public class DeployFingerprintCache {
+
+	private static final String HASH_ALGORITHM = "MD5";
+	private static final int HASH_BUFFER_SIZE = 64 * 1024;
+	
+	private ConcurrentHashMap<Path, Fingerprint> entries = new ConcurrentHashMap<Path, Fingerprint>();
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	
+	private final FingerprintIndex index;
+	private volatile Path deployment = null;
+	
+	public DeployFingerprintCache() {
+		this(null);
+	}
+	
+	public DeployFingerprintCache(FingerprintIndex index) {
+		this.index = index;
+	}
+	
+	/**
+	 * tells the cache where files are being deployed; the first time a deployment is used,
+	 * what the index knows about it is loaded
+	 */
+	public void useDeployment(Path deployment) {
+		if (index == null || deployment.equals(this.deployment)) {
+			return;
+		}
+		synchronized (this) {
+			if (deployment.equals(this.deployment)) {
+				return;
+			}
+			try {
+				Map<String, FingerprintIndex.Entry> loaded = index.open(deployment);
+				for (Map.Entry<String, FingerprintIndex.Entry> entry : loaded.entrySet()) {
+					FingerprintIndex.Entry e = entry.getValue();
+					Fingerprint fingerprint = new Fingerprint(e.getSize(), e.getModified());
+					fingerprint.hash = e.getHash();
+					entries.put(deployment.resolve(entry.getKey()), fingerprint);
+				}
+				Logger.debugf("fingerprint index {} : {} deployed files known in {}", index.getFile(), loaded.size(), deployment);
+			}
+			catch (IOException e) {
+				// a closed index ignores what is written to it
+				Logger.warn("cannot open fingerprint index " + index.getFile() + ", going on without it : " + e.getMessage());
+				index.close();
+			}
+			this.deployment = deployment;
+		}
+	}
+	
+	/**
+	 * writes to disk what is left to write, and stops using the index
+	 */
+	public synchronized void close() {
+		if (index != null) {
+			index.close();
+		}
+	}
+	
+	/**
+	 * @return true if target already holds the same content as source
+	 */
+	public Boolean isUpToDate(File source, File target) throws IOException {
+		Fingerprint deployed = entries.get(target.toPath());
+		
+		if (deployed == null || deployed.size != source.length() || !target.exists() || target.length() != deployed.size) {
+			misses.incrementAndGet();
+			return false;
+		}
+		
+		long sourceModified = source.lastModified();
+		if (deployed.modified == sourceModified) {
+			hits.incrementAndGet();
+			return true;
+		}
+		
+		// same size, different mtime: compare contents
+		if (deployed.hash == null) {
+			deployed.hash = hash(target);
+		}
+		byte[] sourceHash = hash(source);
+		
+		if (Arrays.equals(sourceHash, deployed.hash)) {
+			deployed.modified = sourceModified;
+			write(target.toPath(), deployed);
+			hits.incrementAndGet();
+			return true;
+		}
+		
+		misses.incrementAndGet();
+		return false;
+	}
+	
+	/**
+	 * @param size size of the source when it was copied
+	 * @param modified modification time of the source when it was copied
+	 */
+	public void recordDeployed(File target, long size, long modified) {
+		Fingerprint deployed = new Fingerprint(size, modified);
+		entries.put(target.toPath(), deployed);
+		write(target.toPath(), deployed);
+	}
+	
+	public void forget(File target) {
+		entries.remove(target.toPath());
+		String relative = relativize(target.toPath());
+		if (relative != null) {
+			index.remove(relative);
+		}
+	}
+	
+	public void forgetFolder(File target) {
+		Path folder = target.toPath();
+		Iterator<Path> it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().startsWith(folder)) {
+				it.remove();
+			}
+		}
+		String relative = relativize(folder);
+		if (relative != null) {
+			index.removeFolder(relative);
+		}
+	}
+	
+	/**
+	 * @return true if target has been deployed by this instance
+	 */
+	public Boolean contains(File target) {
+		return entries.containsKey(target.toPath());
+	}
+	
+	/**
+	 * @return true if anything inside folder has been deployed by this instance
+	 */
+	public Boolean containsUnder(File folder) {
+		Path prefix = folder.toPath();
+		for (Path path : entries.keySet()) {
+			if (path.startsWith(prefix)) return true;
+		}
+		return false;
+	}
+	
+	public Long getHits() {
+		return hits.get();
+	}
+	
+	public Long getMisses() {
+		return misses.get();
+	}
+	
+	public Integer getSize() {
+		return entries.size();
+	}
+	
+	private void write(Path target, Fingerprint deployed) {
+		String relative = relativize(target);
+		if (relative != null) {
+			index.put(relative, deployed.size, deployed.modified, deployed.hash);
+		}
+	}
+	
+	/**
+	 * @return path of target in the indexed deployment, null if there's no index or target is not in there
+	 */
+	private String relativize(Path target) {
+		if (index == null) {
+			return null;
+		}
+		return FingerprintIndex.relativize(deployment, target);
+	}
+	
+	private static byte[] hash(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		
+		byte[] buffer = new byte[HASH_BUFFER_SIZE];
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+	
+	private static class Fingerprint {
+		private final long size;
+		private volatile long modified;
+		private volatile byte[] hash;
+		
+		private Fingerprint(long size, long modified) {
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+}
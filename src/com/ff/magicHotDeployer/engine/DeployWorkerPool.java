@@ -0,0 +1,364 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * pool of copy workers fed by the watch loop.
+ *
+ * every worker drains its own bounded queue and events are striped on the path,
+ * so changes to the same file are applied in order while different files are copied in parallel.
+ * since source and target paths map one to one, striping on the source path is the same as
+ * striping on the target path.
+ * folder operations (deletions, created or replaced folders, moves) act on everything under them: their subtree
+ * is pinned to their stripe until they are done, so that later events under it are queued after them, and they
+ * wait for the events under it already given to other stripes before running.
+ * when a queue is full the watch loop blocks on submit, which is our backpressure.
+ * folder syncs hand their copies and deletions to the pool as well (see execute), so that they are ordered
+ * with the events for the same paths instead of racing with them.
+ *
+ * workers run on an executor, on platform daemon threads or, if asked for and the jdk supports them
+ * (21+, looked up by reflection), on virtual threads: blocking copies then don't hold a platform thread each,
+ * so large worker counts become cheap.
+ */
+public class DeployWorkerPool {
+
+	private String name;
+	private DeployEventHandler handler;
+	private List<Stripe> stripes;
+	private Boolean virtual;
+	private ExecutorService executor = null;
+	private volatile Boolean stopped = false;
+	
+	// guards pins and the in flight events of every stripe
+	private Object lock = new Object();
+	private Map<Path, Pin> pins = new HashMap<Path, Pin>();
+	private long submitted = 0L;
+	
+	public DeployWorkerPool(String name, Integer workers, Integer queueSize, DeployEventHandler handler) {
+		this(name, workers, queueSize, false, handler);
+	}
+	
+	public DeployWorkerPool(String name, Integer workers, Integer queueSize, Boolean virtual, DeployEventHandler handler) {
+		if (workers == null || workers < 1) workers = 1;
+		if (queueSize == null || queueSize < workers) queueSize = workers;
+		
+		this.name = name;
+		this.handler = handler;
+		this.virtual = virtual;
+		this.stripes = new ArrayList<Stripe>(workers);
+		
+		Integer perStripe = queueSize / workers;
+		for (int i = 0; i < workers; i ++) {
+			stripes.add(new Stripe(perStripe));
+		}
+	}
+	
+	public void start() {
+		final String prefix = "mhd-" + name + "-worker-";
+		ThreadFactory factory = null;
+		
+		if (virtual) {
+			factory = virtualThreadFactory(prefix);
+			if (factory == null) {
+				Logger.warn("[ " + name + " ] virtual threads need java 21 or later, running " + 
+					System.getProperty("java.version") + " : using platform threads");
+				virtual = false;
+			}
+		}
+		if (factory == null) {
+			factory = new ThreadFactory() {
+				private AtomicInteger counter = new AtomicInteger();
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, prefix + counter.getAndIncrement());
+					t.setDaemon(true);
+					return t;
+				}
+			};
+		}
+		
+		executor = Executors.newFixedThreadPool(stripes.size(), factory);
+		for (Stripe stripe : stripes) {
+			executor.execute(stripe);
+		}
+		Logger.debug("[ " + name + " ] started " + stripes.size() + " deploy workers" + (virtual ? " on virtual threads" : ""));
+	}
+	
+	/**
+	 * Thread.ofVirtual().name(prefix, 0).factory(), through reflection so that we still build and run on java 8
+	 * @return null if virtual threads are not available
+	 */
+	static ThreadFactory virtualThreadFactory(String prefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+	
+	public void submit(DeployEvent event) throws InterruptedException {
+		submit(event, isFolderOperation(event), null);
+	}
+	
+	/**
+	 * runs work on the stripe of path, after the events for it already submitted, and waits for it.
+	 * must not be called from a deploy worker.
+	 *
+	 * @param path source path work is about, as for events
+	 * @param folder true if work acts on everything under path, as folder events do
+	 * @throws InterruptedException if the pool is shut down before work is done
+	 */
+	public <T> T execute(Path path, Boolean folder, Callable<T> work) throws Exception {
+		FutureTask<T> future = new FutureTask<T>(work);
+		if (stopped) {
+			throw new InterruptedException("deploy workers stopped before " + path + " was handled");
+		}
+		submit(new DeployEvent(path, ENTRY_MODIFY), folder, future);
+		while (true) {
+			try {
+				return future.get(1L, TimeUnit.SECONDS);
+			}
+			catch (TimeoutException e) {
+				if (stopped) {
+					// workers are gone, queued work won't run
+					future.cancel(false);
+					throw new InterruptedException("deploy workers stopped before " + path + " was handled");
+				}
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw (Exception) e.getCause();
+			}
+		}
+	}
+	
+	private void submit(DeployEvent event, Boolean barrier, Runnable work) throws InterruptedException {
+		Stripe stripe;
+		Task task;
+		synchronized (lock) {
+			stripe = pinnedStripeOf(event.getPath());
+			if (stripe == null) {
+				stripe = stripeFor(event);
+			}
+			if (barrier) {
+				pin(event.getPath(), stripe);
+				if (event.getMovedFrom() != null) {
+					pin(event.getMovedFrom(), stripe);
+				}
+			}
+			task = new Task(event, barrier, work, ++ submitted);
+			stripe.inFlight.add(task);
+		}
+		stripe.queue.put(task);
+	}
+	
+	public Integer getQueueDepth() {
+		int depth = 0;
+		for (Stripe stripe : stripes) {
+			depth += stripe.queue.size();
+		}
+		return depth;
+	}
+	
+	public Integer getWorkers() {
+		return stripes.size();
+	}
+	
+	public Boolean isVirtual() {
+		return virtual;
+	}
+	
+	public void shutdown() {
+		stopped = true;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		// nobody is going to take them, and a full queue would keep submit blocked
+		for (Stripe stripe : stripes) {
+			stripe.queue.clear();
+		}
+	}
+	
+	private Stripe stripeFor(DeployEvent event) {
+		int hash = event.getPath().hashCode() & 0x7fffffff;
+		return stripes.get(hash % stripes.size());
+	}
+	
+	/**
+	 * deletions are taken as folder operations, since the path can't be checked anymore
+	 */
+	private static Boolean isFolderOperation(DeployEvent event) {
+		if (event.getMovedFrom() != null || event.getKind() == ENTRY_DELETE) {
+			return true;
+		}
+		return (event.getKind() == ENTRY_CREATE || event.isReplacement()) && Files.isDirectory(event.getPath(), NOFOLLOW_LINKS);
+	}
+	
+	/**
+	 * @return the stripe of the outermost pinned folder holding path, null if none
+	 */
+	private Stripe pinnedStripeOf(Path path) {
+		if (pins.isEmpty()) {
+			return null;
+		}
+		Stripe stripe = null;
+		for (Path p = path; p != null; p = p.getParent()) {
+			Pin pin = pins.get(p);
+			if (pin != null) {
+				stripe = pin.stripe;
+			}
+		}
+		return stripe;
+	}
+	
+	private void pin(Path folder, Stripe stripe) {
+		Pin pin = pins.get(folder);
+		if (pin == null) {
+			pins.put(folder, new Pin(stripe));
+		}
+		else {
+			pin.count ++;
+		}
+	}
+	
+	private void unpin(Path folder) {
+		Pin pin = pins.get(folder);
+		if (pin != null && -- pin.count == 0) {
+			pins.remove(folder);
+		}
+	}
+	
+	/**
+	 * @return true if a stripe other than stripe still has an event submitted before task under the folders it touches
+	 */
+	private Boolean isBusyElsewhere(Task task, Stripe stripe) {
+		DeployEvent event = task.event;
+		for (Stripe other : stripes) {
+			if (other == stripe) {
+				continue;
+			}
+			for (Task t : other.inFlight) {
+				// only earlier ones, so that two barriers never wait for each other
+				if (t.sequence < task.sequence && (t.event.getPath().startsWith(event.getPath()) || 
+					(event.getMovedFrom() != null && t.event.getPath().startsWith(event.getMovedFrom())))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private static class Task {
+		private DeployEvent event;
+		// decided on submit: a folder operation, holding pins
+		private Boolean barrier;
+		// run instead of handling event, see execute
+		private Runnable work;
+		private long sequence;
+		
+		private Task(DeployEvent event, Boolean barrier, Runnable work, long sequence) {
+			this.event = event;
+			this.barrier = barrier;
+			this.work = work;
+			this.sequence = sequence;
+		}
+	}
+	
+	private static class Pin {
+		private Stripe stripe;
+		private int count = 1;
+		
+		private Pin(Stripe stripe) {
+			this.stripe = stripe;
+		}
+	}
+	
+	private class Stripe implements Runnable {
+		
+		private BlockingQueue<Task> queue;
+		// queued or running, removed once handled
+		private List<Task> inFlight = new ArrayList<Task>();
+		
+		private Stripe(Integer capacity) {
+			this.queue = new ArrayBlockingQueue<Task>(capacity);
+		}
+		
+		@Override
+		public void run() {
+			while (true) {
+				Task task;
+				try {
+					task = queue.take();
+				} catch (InterruptedException e) {
+					Logger.debug("[ " + name + " ] deploy worker " + Thread.currentThread().getName() + " stopped");
+					return;
+				}
+				
+				DeployEvent event = task.event;
+				try {
+					if (task.barrier) {
+						synchronized (lock) {
+							while (isBusyElsewhere(task, this)) {
+								lock.wait();
+							}
+						}
+					}
+					if (task.work != null) {
+						task.work.run();
+					}
+					else {
+						handler.handle(event);
+					}
+				}
+				catch (InterruptedException e) {
+					Logger.debug("[ " + name + " ] deploy worker " + Thread.currentThread().getName() + " stopped");
+					return;
+				}
+				catch (Throwable e) {
+					Logger.error("[ " + name + " ] deploy worker failed handling " + event, e);
+				}
+				finally {
+					synchronized (lock) {
+						inFlight.remove(task);
+						if (task.barrier) {
+							unpin(event.getPath());
+							if (event.getMovedFrom() != null) {
+								unpin(event.getMovedFrom());
+							}
+						}
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+	}
+}
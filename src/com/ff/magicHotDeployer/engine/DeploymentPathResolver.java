@@ -0,0 +1,188 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * resolves and caches the exploded deployment folder of an instance.
+ *
+ * the jboss temp folders holding the exploded packages (tmp/vfs/deployment or tmp/deploy in jboss4 mode)
+ * are watched for new or removed entries: the cached path is dropped only when one of them reports a change,
+ * so resolving is just a non-blocking poll in the common case.
+ * the cached path is published through a volatile field: workers only take the lock when it has to be searched again.
+ */
+public class DeploymentPathResolver {
+
+	private ConfigurationProvider cfg;
+	private String instanceName;
+	
+	private volatile Path resolved = null;
+	private volatile WatchService watcher = null;
+	private List<WatchKey> keys = new ArrayList<WatchKey>();
+	
+	public DeploymentPathResolver(ConfigurationProvider cfg) {
+		this.cfg = cfg;
+		this.instanceName = "[ " + cfg.getName() + " ] ";
+	}
+	
+	public Path resolve() {
+		Path cached = resolved;
+		if (cached != null && !isInvalidated(cached)) {
+			return cached;
+		}
+		return search(cached);
+	}
+	
+	/**
+	 * @param stale the path found invalid, null if there was none
+	 */
+	private synchronized Path search(Path stale) {
+		if (resolved != null && resolved != stale) {
+			// searched by another thread meanwhile
+			return resolved;
+		}
+		
+		// readers wait for the search instead of using the stale path
+		resolved = null;
+		Logger.debug(this.instanceName + "running a new deployment path search");
+		
+		Path found;
+		if (cfg.getFixedTarget() != null) {
+			found = Paths.get(URI.create("file:///" + cfg.getFixedTarget()));
+		}
+		else {
+			try {
+				found = JbossDeployer.findDeploymentPath(
+					cfg.getJbossHome(), 
+					cfg.getJbossDeployedPackagePrefix(),
+					cfg
+				);
+			} catch (IOException e) {
+				Logger.error("error looking for deployment path", e);
+				throw new RuntimeException(e);
+			}
+			watchDeploymentFolders(found);
+		}
+		
+		Logger.debug(this.instanceName + "new deployment path is " + found.toAbsolutePath().toString());
+		// published once watched, so that readers check it against the new watcher
+		resolved = found;
+		return found;
+	}
+	
+	public synchronized void invalidate() {
+		resolved = null;
+	}
+	
+	public synchronized void close() {
+		closeWatcher();
+	}
+	
+	private Boolean isInvalidated(Path cached) {
+		WatchService watcher = this.watcher;
+		if (watcher == null) {
+			// nothing to watch (fixed target) or watching failed
+			if (cfg.getFixedTarget() == null && !Files.exists(cached)) {
+				Logger.debug(this.instanceName + "cached path is no longer available");
+				return true;
+			}
+			return false;
+		}
+		
+		WatchKey key;
+		try {
+			key = watcher.poll();
+		}
+		catch (ClosedWatchServiceException e) {
+			// replaced by a new search
+			return true;
+		}
+		if (key == null) {
+			return false;
+		}
+		
+		Boolean changed = false;
+		try {
+			do {
+				for (WatchEvent<?> event : key.pollEvents()) {
+					changed |= !isTrash(event.context());
+				}
+				key.reset();
+			}
+			while ((key = watcher.poll()) != null);
+		}
+		catch (ClosedWatchServiceException e) {
+			// nothing left to drain
+		}
+		
+		if (changed) {
+			Logger.debug(this.instanceName + "deployment folders changed, cached path dropped");
+		}
+		return changed;
+	}
+	
+	/**
+	 * a trash folder configured among the exploded packages comes and goes, it does not change the deployment
+	 */
+	private static Boolean isTrash(Object context) {
+		return context instanceof Path && ((Path) context).getFileName().toString().startsWith(TrashBin.TRASH_PREFIX);
+	}
+	
+	private void watchDeploymentFolders(Path found) {
+		closeWatcher();
+		
+		List<Path> folders = new ArrayList<Path>();
+		if (cfg.isJboss4()) {
+			folders.add(Paths.get(cfg.getJbossHome(), "tmp/deploy"));
+		}
+		else {
+			folders.add(Paths.get(cfg.getJbossHome(), "tmp/vfs/deployment"));
+			// exploded packages live in the picked deploymentXXXX folder
+			folders.add(found.getParent());
+		}
+		
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			for (Path folder : folders) {
+				keys.add(folder.register(watcher, ENTRY_CREATE, ENTRY_DELETE));
+				Logger.trace(this.instanceName + "watching deployment folder " + folder.toAbsolutePath().toString());
+			}
+		}
+		catch (IOException e) {
+			Logger.warn(this.instanceName + "cannot watch deployment folders, deployment path will be checked at each event", e);
+			closeWatcher();
+		}
+	}
+	
+	private void closeWatcher() {
+		for (WatchKey key : keys) {
+			key.cancel();
+		}
+		keys.clear();
+		
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				Logger.trace(this.instanceName + "error closing deployment folders watcher : " + e.getMessage());
+			}
+			watcher = null;
+		}
+	}
+}
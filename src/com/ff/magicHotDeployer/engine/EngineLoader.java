@@ -52,6 +52,9 @@ public class EngineLoader {
 		
 		List<RunnableEngineInstance> instances = new ArrayList<RunnableEngineInstance>();
 		
+		// one watcher for all the instances, so that overlapping folders are registered only once
+		SharedWatchService watchService = null;
+		
 		for (Preferences node : configNodes) {
 			
 			ConfigurationProvider cfg = new ConfigurationProvider(
@@ -66,8 +69,19 @@ public class EngineLoader {
 				throw new RuntimeException("Can't load configuration", e);
 			}
 			
-			RunnableEngineInstance instanceRunnerThread = new RunnableEngineInstance(cfg);
-			instances.add(instanceRunnerThread);
+			WatchBackend backend;
+			if (cfg.isPollingWatch()) {
+				backend = new PollingWatchService(cfg.getName(), cfg.getPollInterval());
+			}
+			else {
+				if (watchService == null) {
+					watchService = new SharedWatchService();
+				}
+				backend = watchService;
+			}
+			
+			RunnableEngineInstance instanceRunner = new RunnableEngineInstance(cfg, backend);
+			instances.add(instanceRunner);
 		}
 		
 		return instances;
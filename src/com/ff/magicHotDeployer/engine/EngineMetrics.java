@@ -0,0 +1,216 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * JMX view of a running instance, to be watched from JConsole / VisualVM.
+ *
+ * counters owned by the engine components are read from them on demand,
+ * the watch loop only counts what it drops and the workers record the latency
+ * from the first raw event to the change being deployed.
+ */
+public class EngineMetrics implements EngineMetricsMBean {
+
+	public static final String DOMAIN = "com.ff.magicHotDeployer";
+
+	private String name;
+	private Queue<DeployEvent> inbox;
+	private EventCoalescer coalescer;
+	private DeployWorkerPool workerPool;
+	private JbossDeployer deployer;
+	private RetryScheduler retries;
+	private StormDetector storm;
+	private ObjectName objectName = null;
+
+	private AtomicLong received = new AtomicLong();
+	private AtomicLong filtered = new AtomicLong();
+	private AtomicLong deployed = new AtomicLong();
+	private LatencyHistogram latency = new LatencyHistogram();
+
+	public EngineMetrics(String name, Queue<DeployEvent> inbox, EventCoalescer coalescer,
+			DeployWorkerPool workerPool, JbossDeployer deployer, RetryScheduler retries, StormDetector storm) {
+		this.name = name;
+		this.inbox = inbox;
+		this.coalescer = coalescer;
+		this.workerPool = workerPool;
+		this.deployer = deployer;
+		this.retries = retries;
+		this.storm = storm;
+	}
+
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName candidate = new ObjectName(DOMAIN + ":type=Engine,name=" + name.replaceAll("[,=:\"*?]", "_"));
+			server.registerMBean(this, candidate);
+			objectName = candidate;
+			Logger.debugf("[ {} ] metrics registered as {}", name, objectName);
+		}
+		catch (Exception e) {
+			// e.g. two instances with the same name: metrics are not worth stopping for
+			Logger.warn("[ " + name + " ] cannot register metrics MBean : " + e.getMessage());
+		}
+	}
+
+	public void unregister() {
+		if (objectName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch (Exception e) {
+			Logger.debug("[ " + name + " ] cannot unregister metrics MBean : " + e.getMessage());
+		}
+		objectName = null;
+	}
+
+	public void eventReceived() {
+		received.incrementAndGet();
+	}
+
+	public void eventFiltered() {
+		filtered.incrementAndGet();
+	}
+
+	public void eventDeployed(DeployEvent event) {
+		deployed.incrementAndGet();
+		latency.record(System.nanoTime() - event.getReceivedAt());
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String getInstanceName() {
+		return name;
+	}
+
+	@Override
+	public long getEventsReceived() {
+		return received.get();
+	}
+
+	@Override
+	public long getEventsFiltered() {
+		return filtered.get();
+	}
+
+	@Override
+	public long getEventsCoalesced() {
+		return coalescer != null ? coalescer.getCoalesced() : 0L;
+	}
+
+	@Override
+	public long getEventsDeployed() {
+		return deployed.get();
+	}
+
+	@Override
+	public long getFilesCopied() {
+		return deployer.getFilesCopied();
+	}
+
+	@Override
+	public long getBytesCopied() {
+		return deployer.getBytesCopied();
+	}
+
+	@Override
+	public long getFilesSkipped() {
+		return deployer.getFilesSkipped();
+	}
+
+	@Override
+	public long getDeletes() {
+		return deployer.getDeletes();
+	}
+
+	@Override
+	public long getMoves() {
+		return deployer.getMoves();
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.getRetries();
+	}
+
+	@Override
+	public long getFailures() {
+		return retries.getFailures();
+	}
+
+	@Override
+	public long getStorms() {
+		return storm != null ? storm.getStorms() : 0L;
+	}
+
+	@Override
+	public long getStormEvents() {
+		return storm != null ? storm.getDropped() : 0L;
+	}
+
+	/**
+	 * events waiting in the inbox plus those waiting for a worker
+	 */
+	@Override
+	public int getQueueDepth() {
+		return inbox.size() + workerPool.getQueueDepth();
+	}
+
+	@Override
+	public long getLatencyCount() {
+		return latency.getCount();
+	}
+
+	@Override
+	public double getLatencyMeanMillis() {
+		return toMillis(latency.getMean());
+	}
+
+	@Override
+	public double getLatencyP50Millis() {
+		return toMillis(latency.getPercentile(50));
+	}
+
+	@Override
+	public double getLatencyP95Millis() {
+		return toMillis(latency.getPercentile(95));
+	}
+
+	@Override
+	public double getLatencyP99Millis() {
+		return toMillis(latency.getPercentile(99));
+	}
+
+	@Override
+	public double getLatencyMaxMillis() {
+		return toMillis(latency.getMax());
+	}
+
+	@Override
+	public void resetLatency() {
+		latency.reset();
+	}
+
+	private static double toMillis(long micros) {
+		return micros / (double) TimeUnit.MILLISECONDS.toMicros(1);
+	}
+
+	@Override
+	public String toString() {
+		return received + " events received, " + filtered + " filtered, " + getEventsCoalesced() + " coalesced, " +
+			deployed + " deployed (p50 " + getLatencyP50Millis() + " ms, p99 " + getLatencyP99Millis() + " ms), " +
+			getFilesCopied() + " files copied, " + getDeletes() + " deletes, " + getMoves() + " moves, " + getRetries() + " retries, " + getFailures() + " failures";
+	}
+}
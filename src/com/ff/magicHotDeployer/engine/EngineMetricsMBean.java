@@ -0,0 +1,51 @@
+package com.ff.magicHotDeployer.engine;
+
+/**
+ * per instance metrics, registered as com.ff.magicHotDeployer:type=Engine,name=&lt;instance name&gt;
+ */
+public interface EngineMetricsMBean {
+
+	String getInstanceName();
+
+	long getEventsReceived();
+
+	long getEventsFiltered();
+
+	long getEventsCoalesced();
+
+	long getEventsDeployed();
+
+	long getFilesCopied();
+
+	long getBytesCopied();
+
+	long getFilesSkipped();
+
+	long getDeletes();
+
+	long getMoves();
+
+	long getStorms();
+
+	long getStormEvents();
+
+	long getRetries();
+
+	long getFailures();
+
+	int getQueueDepth();
+
+	long getLatencyCount();
+
+	double getLatencyMeanMillis();
+
+	double getLatencyP50Millis();
+
+	double getLatencyP95Millis();
+
+	double getLatencyP99Millis();
+
+	double getLatencyMaxMillis();
+
+	void resetLatency();
+}
@@ -0,0 +1,155 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * runs the configured instances on a managed executor.
+ *
+ * the caller blocks until no instance is left instead of polling them;
+ * an instance failing is started again after a growing delay, up to
+ * maxRestarts times in a row, while an instance stopping normally is not.
+ */
+public class EngineSupervisor {
+
+	private ExecutorService executor;
+	private CompletionService<Run> completion;
+	private ScheduledExecutorService restarts;
+	
+	// instances running or waiting to be restarted
+	private AtomicInteger active = new AtomicInteger();
+	
+	public EngineSupervisor() {
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private AtomicInteger counter = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "mhd-instance-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		completion = new ExecutorCompletionService<Run>(executor);
+		restarts = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "mhd-restart");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	public void start(List<RunnableEngineInstance> instances) {
+		for (RunnableEngineInstance instance : instances) {
+			active.incrementAndGet();
+			submit(new Run(instance));
+		}
+	}
+	
+	private void submit(final Run run) {
+		// the thread is named after the instance while it runs it
+		completion.submit(new Callable<Run>() {
+			@Override
+			public Run call() {
+				Thread current = Thread.currentThread();
+				String previousName = current.getName();
+				current.setName("mhd-instance-" + run.instance.getName());
+				run.startedAt = System.nanoTime();
+				run.failed = false;
+				try {
+					run.instance.run();
+				}
+				catch (Throwable e) {
+					// already logged by the instance
+					run.failed = true;
+				}
+				finally {
+					current.setName(previousName);
+				}
+				return run;
+			}
+		});
+	}
+	
+	/**
+	 * blocks until every instance has stopped or has run out of restarts
+	 */
+	public void awaitTermination() throws InterruptedException {
+		while (active.get() > 0) {
+			Run run;
+			try {
+				run = completion.take().get();
+			}
+			catch (ExecutionException e) {
+				// the task catches everything, this is not expected
+				Logger.error("[supervisor] unexpected instance failure", e);
+				active.decrementAndGet();
+				continue;
+			}
+			if (!run.failed) {
+				Logger.debug("[supervisor] instance " + run.instance.getName() + " stopped");
+				active.decrementAndGet();
+			}
+			else if (!scheduleRestart(run)) {
+				active.decrementAndGet();
+			}
+		}
+		restarts.shutdownNow();
+		executor.shutdown();
+	}
+	
+	private Boolean scheduleRestart(final Run run) {
+		ConfigurationProvider cfg = run.instance.getCfg();
+		
+		long ranFor = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - run.startedAt);
+		if (ranFor >= cfg.getRestartMaxDelay()) {
+			// it had been running fine for a while, this is not a crash loop
+			run.failures = 0;
+		}
+		
+		if (run.failures >= cfg.getMaxRestarts()) {
+			Logger.error("[supervisor] instance " + run.instance.getName() + " failed " + (run.failures + 1) + " times in a row, giving up");
+			return false;
+		}
+		
+		long delay = cfg.getRestartDelay();
+		for (int i = 0; i < run.failures && delay < cfg.getRestartMaxDelay(); i ++) {
+			delay *= 2;
+		}
+		delay = Math.min(delay, cfg.getRestartMaxDelay());
+		run.failures ++;
+		
+		Logger.warn("[supervisor] instance " + run.instance.getName() + " failed, restarting in " + delay + " ms (" + run.failures + " of " + cfg.getMaxRestarts() + ")");
+		restarts.schedule(new Runnable() {
+			@Override
+			public void run() {
+				submit(run);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		return true;
+	}
+	
+	private static class Run {
+		private RunnableEngineInstance instance;
+		private Integer failures = 0;
+		private volatile long startedAt = System.nanoTime();
+		private volatile Boolean failed = false;
+		
+		private Run(RunnableEngineInstance instance) {
+			this.instance = instance;
+		}
+	}
+}
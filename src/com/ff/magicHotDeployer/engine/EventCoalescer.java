@@ -0,0 +1,152 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * folds raw watch events for the same path into a single final action.
+ *
+ * events are collected for a fixed window starting from the first pending one
+ * and / or until no new event arrives for a quiet period, then drained in order of first appearance:
+ * CREATE + MODIFY = CREATE, CREATE + DELETE = nothing, DELETE + CREATE = CREATE (replacement),
+ * MODIFY + DELETE = DELETE.
+ *
+ * not thread safe: it's meant to be used by the watch loop only.
+ */
+public class EventCoalescer {
+
+	/**
+	 * returned by getMillisToFlush when neither a window nor a quiet period is set:
+	 * pending events wait for an explicit drain
+	 */
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	private long windowNanos;
+	private long quietNanos;
+	private long windowStart = 0L;
+	private long lastAdded = 0L;
+	private LinkedHashMap<Path, PendingEvent> pending = new LinkedHashMap<Path, PendingEvent>();
+
+	private long received = 0L;
+	private long emitted = 0L;
+	private long drained = 0L;
+
+	public EventCoalescer(long windowMillis) {
+		this(windowMillis, 0L);
+	}
+
+	/**
+	 * @param windowMillis max time from the first pending event, 0 = no limit
+	 * @param quietMillis time without new events after which pending ones are due, 0 = disabled
+	 */
+	public EventCoalescer(long windowMillis, long quietMillis) {
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+	}
+
+	public void add(Path path, WatchEvent.Kind<?> kind) {
+		received ++;
+
+		lastAdded = System.nanoTime();
+		if (pending.isEmpty()) {
+			windowStart = lastAdded;
+		}
+
+		PendingEvent current = pending.get(path);
+		if (current == null) {
+			pending.put(path, new PendingEvent(new DeployEvent(path, kind)));
+			return;
+		}
+
+		DeployEvent event = current.event;
+
+		if (kind == ENTRY_DELETE) {
+			if (!current.existedBefore) {
+				// created and deleted in the same window: nothing to do at all
+				pending.remove(path);
+			}
+			else {
+				event.setKind(ENTRY_DELETE);
+				event.setReplacement(false);
+			}
+		}
+		else if (kind == ENTRY_CREATE || event.getKind() == ENTRY_DELETE) {
+			if (event.getKind() == ENTRY_DELETE) {
+				event.setReplacement(true);
+			}
+			event.setKind(ENTRY_CREATE);
+		}
+		// MODIFY on a pending CREATE or MODIFY is already covered
+	}
+
+	public Boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	public Boolean isPending(Path path) {
+		return pending.containsKey(path);
+	}
+
+	public Boolean isDue() {
+		return !pending.isEmpty() && getMillisToFlush() <= 0;
+	}
+
+	public long getMillisToFlush() {
+		if (windowNanos <= 0 && quietNanos <= 0) {
+			return NO_DEADLINE;
+		}
+		long now = System.nanoTime();
+		long remaining = Long.MAX_VALUE;
+		if (windowNanos > 0) {
+			remaining = windowNanos - (now - windowStart);
+		}
+		if (quietNanos > 0) {
+			remaining = Math.min(remaining, quietNanos - (now - lastAdded));
+		}
+		if (remaining <= 0) return 0;
+		return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining));
+	}
+
+	public List<DeployEvent> drain() {
+		List<DeployEvent> out = new ArrayList<DeployEvent>(pending.size());
+		for (PendingEvent p : pending.values()) {
+			out.add(p.event);
+		}
+		pending.clear();
+		drained = received;
+		emitted += out.size();
+		return out;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public long getEmitted() {
+		return emitted;
+	}
+
+	/**
+	 * raw events folded away (up to the last drain)
+	 */
+	public long getCoalesced() {
+		return drained - emitted;
+	}
+
+	private static class PendingEvent {
+		private DeployEvent event;
+		private boolean existedBefore;
+
+		private PendingEvent(DeployEvent event) {
+			this.event = event;
+			this.existedBefore = (event.getKind() != ENTRY_CREATE);
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * what an instance deployed, kept on disk so that it survives restarts.
+ *
+ * the index is a memory mapped log of records (deployed: relative path, size, mtime and content hash when known;
+ * removed: a file or a whole folder), paths being relative to the deployment folder named in the header.
+ * records are appended as files are deployed or removed, and replayed when the index is opened again;
+ * the header holds the end of the last complete record, so a record half written when the process died is ignored.
+ * an index written for another deployment (e.g. the package has been redeployed by jboss) is thrown away,
+ * and one holding mostly stale records is rewritten when opened. both are rewritten in place from the start,
+ * since a mapped file cannot be truncated everywhere (windows): the file never shrinks, what follows the end is ignored.
+ * a damaged record ends the log, what follows it is overwritten by the next records.
+ */
+public class FingerprintIndex {
+
+	private static final String DEFAULT_FOLDER = ".mhd-index";
+	private static final String EXTENSION = ".idx";
+
+	private static final long MAGIC = 0x4D48444958303031L; // MHDIX001
+	private static final int END_OFFSET = 8;
+	private static final int HEADER_SIZE = 16;
+	private static final int INITIAL_CAPACITY = 256 * 1024;
+	private static final int COMPACT_MIN_RECORDS = 1024;
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte REMOVE_FOLDER = 3;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private Path file;
+	private FileChannel channel = null;
+	private FileLock lock = null;
+	private MappedByteBuffer buffer = null;
+	private Path deployment = null;
+	private int records = 0;
+
+	public FingerprintIndex(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param configured index file from the configuration, null to use one per instance in the working folder
+	 */
+	public static Path fileFor(String configured, String name) {
+		if (configured != null) {
+			return new File(configured).toPath().toAbsolutePath().normalize();
+		}
+		return Paths.get(ConfigurationProvider.getCurrentPath(), DEFAULT_FOLDER, name.replaceAll("[^A-Za-z0-9._-]", "_") + EXTENSION);
+	}
+
+	/**
+	 * opens the index for deployment, starting a new one if it was written for another
+	 *
+	 * @return deployed files by path relative to deployment
+	 */
+	public synchronized Map<String, Entry> open(Path deployment) throws IOException {
+		close();
+
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			lock = channel.tryLock();
+		}
+		catch (OverlappingFileLockException e) {
+			lock = null;
+		}
+		if (lock == null) {
+			channel.close();
+			channel = null;
+			throw new IOException(file + " is in use by another process");
+		}
+
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		this.deployment = deployment;
+
+		if (channel.size() >= HEADER_SIZE) {
+			map(channel.size());
+			if (buffer.getLong(0) == MAGIC && deployment.toString().equals(readDeployment())) {
+				replay(entries);
+				if (records > COMPACT_MIN_RECORDS && records > entries.size() * 2) {
+					Logger.debugf("compacting fingerprint index {} : {} records, {} entries", file, records, entries.size());
+					rewrite(entries);
+				}
+				return entries;
+			}
+			Logger.debugf("fingerprint index {} belongs to another deployment, starting a new one", file);
+		}
+
+		rewrite(entries);
+		return entries;
+	}
+
+	public synchronized void put(String relative, long size, long modified, byte[] hash) {
+		byte[] path = relative.getBytes(UTF8);
+		int hashLength = (hash != null ? hash.length : 0);
+		if (!reserve(1 + 2 + path.length + 8 + 8 + 1 + hashLength)) {
+			return;
+		}
+		buffer.put(PUT);
+		buffer.putShort((short) path.length);
+		buffer.put(path);
+		buffer.putLong(size);
+		buffer.putLong(modified);
+		buffer.put((byte) hashLength);
+		if (hash != null) {
+			buffer.put(hash);
+		}
+		commit();
+	}
+
+	public synchronized void remove(String relative) {
+		append(REMOVE, relative);
+	}
+
+	/**
+	 * removes every entry in the relative folder
+	 */
+	public synchronized void removeFolder(String relative) {
+		append(REMOVE_FOLDER, relative);
+	}
+
+	public synchronized Path getDeployment() {
+		return deployment;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public synchronized void close() {
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+		try {
+			if (lock != null) {
+				lock.release();
+			}
+			if (channel != null) {
+				channel.close();
+			}
+		}
+		catch (IOException e) {
+			Logger.debug("cannot close fingerprint index " + file + " : " + e.getMessage());
+		}
+		lock = null;
+		channel = null;
+		deployment = null;
+	}
+
+	private void append(byte type, String relative) {
+		byte[] path = relative.getBytes(UTF8);
+		if (!reserve(1 + 2 + path.length)) {
+			return;
+		}
+		buffer.put(type);
+		buffer.putShort((short) path.length);
+		buffer.put(path);
+		commit();
+	}
+
+	/**
+	 * positions the buffer at the end of the log with room for length more bytes
+	 */
+	private Boolean reserve(int length) {
+		if (buffer == null) {
+			return false;
+		}
+		int end = (int) buffer.getLong(END_OFFSET);
+		try {
+			if (end + length > buffer.capacity()) {
+				map(Math.max((long) buffer.capacity() * 2, end + length));
+			}
+		}
+		catch (IOException e) {
+			Logger.warn("cannot grow fingerprint index " + file + " : " + e.getMessage());
+			return false;
+		}
+		buffer.position(end);
+		return true;
+	}
+
+	private void commit() {
+		// the record is complete: make it part of the log
+		buffer.putLong(END_OFFSET, buffer.position());
+		records ++;
+	}
+
+	private void map(long size) throws IOException {
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	private String readDeployment() {
+		int length = buffer.getInt(HEADER_SIZE);
+		if (length < 0 || HEADER_SIZE + 4 + length > buffer.capacity()) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.position(HEADER_SIZE + 4);
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private void replay(Map<String, Entry> entries) {
+		long end = buffer.getLong(END_OFFSET);
+		records = 0;
+		if (end < buffer.position() || end > buffer.capacity()) {
+			end = buffer.position();
+		}
+		// a record running past the end is as damaged as an unknown one
+		buffer.limit((int) end);
+		try {
+			while (buffer.position() < end) {
+				int start = buffer.position();
+				try {
+					if (!replayRecord(entries)) {
+						damaged(start, "unknown record type");
+						break;
+					}
+				}
+				catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+					damaged(start, "truncated record");
+					break;
+				}
+				records ++;
+			}
+		}
+		finally {
+			buffer.limit(buffer.capacity());
+		}
+	}
+
+	/**
+	 * @return false if the record at the buffer position is of an unknown type
+	 */
+	private Boolean replayRecord(Map<String, Entry> entries) {
+		byte type = buffer.get();
+		if (type != PUT && type != REMOVE && type != REMOVE_FOLDER) {
+			return false;
+		}
+		byte[] path = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(path);
+		String relative = new String(path, UTF8);
+
+		if (type == PUT) {
+			long size = buffer.getLong();
+			long modified = buffer.getLong();
+			byte[] hash = null;
+			int hashLength = buffer.get() & 0xFF;
+			if (hashLength > 0) {
+				hash = new byte[hashLength];
+				buffer.get(hash);
+			}
+			entries.put(relative, new Entry(size, modified, hash));
+		}
+		else if (type == REMOVE) {
+			entries.remove(relative);
+		}
+		else {
+			String prefix = relative + "/";
+			Iterator<String> it = entries.keySet().iterator();
+			while (it.hasNext()) {
+				String key = it.next();
+				if (key.equals(relative) || key.startsWith(prefix)) {
+					it.remove();
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * the log ends before the damaged record, the next records are written over it
+	 */
+	private void damaged(int offset, String reason) {
+		Logger.warn("fingerprint index " + file + " is damaged (" + reason + "), ignoring it from offset " + offset);
+		buffer.putLong(END_OFFSET, offset);
+	}
+
+	/**
+	 * starts the log again with just the given entries, over the current one
+	 */
+	private void rewrite(Map<String, Entry> entries) throws IOException {
+		byte[] name = deployment.toString().getBytes(UTF8);
+
+		long size = Math.max(Math.max(INITIAL_CAPACITY, HEADER_SIZE + 4 + name.length), channel.size());
+		if (buffer == null || buffer.capacity() < size) {
+			map(size);
+		}
+		// not an index until the header is complete
+		buffer.putLong(0, 0L);
+		buffer.putInt(HEADER_SIZE, name.length);
+		buffer.position(HEADER_SIZE + 4);
+		buffer.put(name);
+		buffer.putLong(END_OFFSET, buffer.position());
+		buffer.putLong(0, MAGIC);
+		records = 0;
+
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			Entry e = entry.getValue();
+			put(entry.getKey(), e.size, e.modified, e.hash);
+		}
+	}
+
+	/**
+	 * @return relative path of target in the deployment, with / as separator; null if it is not in there
+	 */
+	public static String relativize(Path deployment, Path target) {
+		if (deployment == null || !target.startsWith(deployment)) {
+			return null;
+		}
+		String relative = deployment.relativize(target).toString();
+		return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
+	}
+
+	public static class Entry {
+		private long size;
+		private long modified;
+		private byte[] hash;
+
+		public Entry(long size, long modified, byte[] hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+
+		/**
+		 * null if the content has never been hashed
+		 */
+		public byte[] getHash() {
+			return hash;
+		}
+	}
+}
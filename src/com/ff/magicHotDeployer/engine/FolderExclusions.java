@@ -0,0 +1,80 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * globs of folders that are never watched, e.g. .git, target, node_modules.
+ *
+ * the rules are the same as for include / exclude (see PathFilter): globs without a separator
+ * match the folder name at any depth, the others match the folder path relative to the watched root;
+ * a leading "/" anchors a plain name to the watched root, and a trailing "/" or "/**" makes no difference.
+ */
+public class FolderExclusions {
+
+	private List<PathMatcher> nameMatchers = new ArrayList<PathMatcher>();
+	private List<PathMatcher> pathMatchers = new ArrayList<PathMatcher>();
+	
+	public FolderExclusions(List<String> globs) {
+		if (globs == null) {
+			return;
+		}
+		for (String glob : globs) {
+			glob = glob.trim().replace('\\', '/');
+			if (glob.endsWith("/**")) glob = glob.substring(0, glob.length() - 3);
+			else if (glob.endsWith("/")) glob = glob.substring(0, glob.length() - 1);
+			Boolean anchored = glob.startsWith("/");
+			if (anchored) glob = glob.substring(1);
+			if (glob.isEmpty()) {
+				continue;
+			}
+			
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+			if (anchored || glob.contains("/")) {
+				pathMatchers.add(matcher);
+			}
+			else {
+				nameMatchers.add(matcher);
+			}
+		}
+	}
+	
+	public Boolean isEmpty() {
+		return nameMatchers.isEmpty() && pathMatchers.isEmpty();
+	}
+	
+	/**
+	 * checks the folder itself, assuming its parents have already been checked
+	 * @param relative folder path relative to the watched root
+	 */
+	public Boolean isExcluded(Path relative) {
+		if (relative.getNameCount() == 0 || relative.toString().isEmpty()) {
+			return false;
+		}
+		Path name = relative.getFileName();
+		for (PathMatcher matcher : nameMatchers) {
+			if (matcher.matches(name)) return true;
+		}
+		for (PathMatcher matcher : pathMatchers) {
+			if (matcher.matches(relative)) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * checks the folder and all of its parents up to the watched root
+	 * @param relative folder path relative to the watched root
+	 */
+	public Boolean isExcludedAnywhere(Path relative) {
+		if (isEmpty()) {
+			return false;
+		}
+		for (int i = 1; i <= relative.getNameCount(); i ++) {
+			if (isExcluded(relative.subpath(0, i))) return true;
+		}
+		return false;
+	}
+}
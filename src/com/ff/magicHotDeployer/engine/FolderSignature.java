@@ -0,0 +1,53 @@
+package com.ff.magicHotDeployer.engine;
+
+/**
+ * summary of the files in a folder: how many, how many bytes, and a hash of their relative paths, sizes
+ * and modification times. the hash does not depend on the order files are added in, so a source folder
+ * and its deployed copy have the same signature whatever order they are walked in.
+ */
+public class FolderSignature {
+
+	private Integer files = 0;
+	private Long bytes = 0L;
+	private Long hash = 0L;
+
+	public void add(String relativePath, long size, long lastModified) {
+		files ++;
+		bytes += size;
+		hash += mix(relativePath.hashCode() * 31L + size) ^ mix(lastModified);
+	}
+
+	private static long mix(long value) {
+		// splitmix64 finalizer, so that summing entries does not cancel them out
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+	public Integer getFiles() {
+		return files;
+	}
+
+	public Long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof FolderSignature)) {
+			return false;
+		}
+		FolderSignature other = (FolderSignature) obj;
+		return files.equals(other.files) && bytes.equals(other.bytes) && hash.equals(other.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return files + " files, " + bytes + " bytes";
+	}
+}
@@ -0,0 +1,403 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * brings a target folder in line with its source folder, comparing size and modification time.
+ *
+ * every folder is handled by its own fork/join task, which lists source and target side by side,
+ * copies what is missing or different and forks a task for each sub folder.
+ * tasks block on the file system most of the time, so they run on a pool of their own, shared by every instance,
+ * sized beyond the number of cores and kept away from the common pool.
+ * target entries missing from the source are deleted only if deleteExtraneous is set
+ * or if they have been deployed by this instance, since exploded deployments usually hold
+ * much more than a single source folder. folders known to have changed (see SyncRequest)
+ * also lose the files missing from the source that pass the filters.
+ *
+ * while the instance is running, copies and deletions are handed to its deploy workers on the stripe of the path,
+ * so that they are applied in order with the events for it rather than writing the same target at the same time.
+ */
+public class FolderSynchronizer {
+
+	private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	private static final ForkJoinPool POOL = new ForkJoinPool(POOL_SIZE, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+		private final AtomicLong count = new AtomicLong();
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			// fork/join workers are daemon threads
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName("mhd-sync-" + count.incrementAndGet());
+			return t;
+		}
+	}, null, false);
+	
+	private JbossDeployer deployer;
+	private FolderExclusions exclusions;
+	private Boolean deleteExtraneous;
+	private DeployWorkerPool workers;
+	
+	public FolderSynchronizer(JbossDeployer deployer, FolderExclusions exclusions, Boolean deleteExtraneous) {
+		this(deployer, exclusions, deleteExtraneous, null);
+	}
+	
+	/**
+	 * @param workers deploy workers of the instance, null to copy and delete right away from the sync threads
+	 */
+	public FolderSynchronizer(JbossDeployer deployer, FolderExclusions exclusions, Boolean deleteExtraneous, DeployWorkerPool workers) {
+		this.deployer = deployer;
+		this.exclusions = (exclusions != null ? exclusions : new FolderExclusions(null));
+		this.deleteExtraneous = deleteExtraneous;
+		this.workers = workers;
+	}
+	
+	/**
+	 * @param root the watched root, exclusions are relative to it
+	 */
+	public SyncStats synchronize(Path root, Path source, Path target, Boolean recursive) {
+		SyncStats stats = new SyncStats();
+		POOL.invoke(new SyncFolderTask(root, source, target, recursive, false, stats));
+		stats.stop();
+		return stats;
+	}
+	
+	/**
+	 * synchronizes several folders at once, all of them in parallel
+	 */
+	public SyncStats synchronize(List<SyncRequest> requests) {
+		SyncStats stats = new SyncStats();
+		final List<SyncFolderTask> tasks = new ArrayList<SyncFolderTask>(requests.size());
+		for (SyncRequest request : requests) {
+			tasks.add(new SyncFolderTask(request.root, request.source, request.target, request.recursive, request.changed, stats));
+		}
+		POOL.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		stats.stop();
+		return stats;
+	}
+	
+	private static Map<String, BasicFileAttributes> list(Path folder) throws IOException {
+		Map<String, BasicFileAttributes> entries = new HashMap<String, BasicFileAttributes>();
+		if (!Files.isDirectory(folder, NOFOLLOW_LINKS)) {
+			return entries;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for (Path entry : stream) {
+				try {
+					entries.put(entry.getFileName().toString(), Files.readAttributes(entry, BasicFileAttributes.class, NOFOLLOW_LINKS));
+				}
+				catch (NoSuchFileException e) {
+					// removed while listing
+				}
+			}
+		}
+		return entries;
+	}
+	
+	private static Boolean isEmptyFolder(Path folder) {
+		if (!Files.isDirectory(folder, NOFOLLOW_LINKS)) {
+			return false;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			return !stream.iterator().hasNext();
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * runs work on the deploy worker striped on sourcePath, if any
+	 */
+	private <T> T onStripe(Path sourcePath, Boolean folder, Callable<T> work) throws IOException {
+		try {
+			if (workers == null) {
+				return work.call();
+			}
+			return workers.execute(sourcePath, folder, work);
+		}
+		catch (IOException | RuntimeException e) {
+			throw e;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while syncing " + sourcePath);
+		}
+		catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+	
+	private static Boolean isSame(BasicFileAttributes source, BasicFileAttributes target) {
+		// copies keep the source mtime, at millisecond precision
+		return target != null && target.isRegularFile() && 
+			source.size() == target.size() && 
+			source.lastModifiedTime().toMillis() == target.lastModifiedTime().toMillis();
+	}
+	
+	private class SyncFolderTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private Path root;
+		private Path source;
+		private Path target;
+		private Boolean recursive;
+		private Boolean changed;
+		private SyncStats stats;
+		
+		private SyncFolderTask(Path root, Path source, Path target, Boolean recursive, Boolean changed, SyncStats stats) {
+			this.root = root;
+			this.source = source;
+			this.target = target;
+			this.recursive = recursive;
+			this.changed = changed;
+			this.stats = stats;
+		}
+		
+		@Override
+		protected void compute() {
+			Map<String, BasicFileAttributes> sourceEntries;
+			Map<String, BasicFileAttributes> targetEntries;
+			try {
+				sourceEntries = list(source);
+				targetEntries = list(target);
+			}
+			catch (IOException e) {
+				Logger.warn("cannot compare " + source + " with " + target + " : " + e.getMessage());
+				stats.failed.incrementAndGet();
+				return;
+			}
+			
+			List<SyncFolderTask> children = new ArrayList<SyncFolderTask>();
+			
+			for (Map.Entry<String, BasicFileAttributes> entry : sourceEntries.entrySet()) {
+				Path sourceChild = source.resolve(entry.getKey());
+				Path targetChild = target.resolve(entry.getKey());
+				BasicFileAttributes attrs = entry.getValue();
+				
+				if (attrs.isDirectory()) {
+					if (recursive && !exclusions.isExcluded(root.relativize(sourceChild))) {
+						children.add(new SyncFolderTask(root, sourceChild, targetChild, recursive, changed, stats));
+					}
+					continue;
+				}
+				if (!attrs.isRegularFile() || !deployer.accepts(sourceChild)) {
+					continue;
+				}
+				
+				stats.checked.incrementAndGet();
+				if (isSame(attrs, targetEntries.get(entry.getKey()))) {
+					stats.unchanged.incrementAndGet();
+					continue;
+				}
+				
+				try {
+					if (copy(sourceChild, targetChild)) {
+						stats.copied.incrementAndGet();
+						stats.bytes.addAndGet(attrs.size());
+					}
+					else {
+						stats.unchanged.incrementAndGet();
+					}
+				}
+				catch (IOException e) {
+					Logger.warn("cannot copy " + sourceChild + " : " + e.getMessage());
+					stats.failed.incrementAndGet();
+				}
+			}
+			
+			deleteExtraneous(sourceEntries, targetEntries, children);
+			
+			invokeAll(children);
+			
+			if (sourceEntries.isEmpty() && !Files.exists(source) && isEmptyFolder(target)) {
+				// whatever we deployed in here is gone
+				try {
+					Files.delete(target);
+					stats.deleted.incrementAndGet();
+				}
+				catch (IOException e) {
+					Logger.trace("cannot delete emptied folder " + target + " : " + e.getMessage());
+				}
+			}
+		}
+		
+		private void deleteExtraneous(Map<String, BasicFileAttributes> sourceEntries, Map<String, BasicFileAttributes> targetEntries, List<SyncFolderTask> children) {
+			for (Map.Entry<String, BasicFileAttributes> entry : targetEntries.entrySet()) {
+				if (sourceEntries.containsKey(entry.getKey())) {
+					continue;
+				}
+				Path sourceChild = source.resolve(entry.getKey());
+				Path targetChild = target.resolve(entry.getKey());
+				try {
+					if (entry.getValue().isDirectory()) {
+						if (!recursive || exclusions.isExcluded(root.relativize(sourceChild))) {
+							continue;
+						}
+						if (deleteExtraneous) {
+							deleteFolder(sourceChild, targetChild);
+						}
+						else {
+							if (changed || deployer.isOwned(targetChild.toFile())) {
+								// remove only what we deployed in there, or what the filters let through
+								children.add(new SyncFolderTask(root, sourceChild, targetChild, recursive, changed, stats));
+							}
+							continue;
+						}
+					}
+					else {
+						if (!deployer.accepts(sourceChild)) {
+							continue;
+						}
+						if (!deleteExtraneous && !changed && !deployer.isOwned(targetChild.toFile())) {
+							continue;
+						}
+						deleteFile(sourceChild, targetChild);
+					}
+					stats.deleted.incrementAndGet();
+				}
+				catch (IOException e) {
+					Logger.warn("cannot delete " + targetChild + " : " + e.getMessage());
+					stats.failed.incrementAndGet();
+				}
+			}
+		}
+		
+		private Boolean copy(final Path sourceChild, final Path targetChild) throws IOException {
+			return onStripe(sourceChild, false, new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws IOException {
+					return deployer.hotDeployFile(sourceChild.toFile(), targetChild.toFile());
+				}
+			});
+		}
+		
+		private void deleteFile(Path sourceChild, final Path targetChild) throws IOException {
+			onStripe(sourceChild, false, new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws IOException {
+					return deployer.hotUndeployFile(targetChild.toFile());
+				}
+			});
+		}
+		
+		private void deleteFolder(Path sourceChild, final Path targetChild) throws IOException {
+			onStripe(sourceChild, true, new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws IOException {
+					return deployer.hotUndeployFolder(targetChild.toFile());
+				}
+			});
+		}
+	}
+	
+	/**
+	 * a folder to synchronize, see synchronize(Path, Path, Path, Boolean)
+	 */
+	public static class SyncRequest {
+		
+		private Path root;
+		private Path source;
+		private Path target;
+		private Boolean recursive;
+		private Boolean changed;
+		
+		public SyncRequest(Path root, Path source, Path target, Boolean recursive) {
+			this(root, source, target, recursive, false);
+		}
+		
+		/**
+		 * @param changed true if source is known to have changed (e.g. events were seen in it during a storm):
+		 * target files missing from it are deleted if they pass the filters, even without deleteExtraneous
+		 */
+		public SyncRequest(Path root, Path source, Path target, Boolean recursive, Boolean changed) {
+			this.root = root;
+			this.source = source;
+			this.target = target;
+			this.recursive = recursive;
+			this.changed = changed;
+		}
+		
+		public Path getSource() {
+			return source;
+		}
+		public Path getTarget() {
+			return target;
+		}
+		public Boolean getRecursive() {
+			return recursive;
+		}
+		public Boolean getChanged() {
+			return changed;
+		}
+	}
+	
+	public static class SyncStats {
+		
+		private AtomicLong checked = new AtomicLong();
+		private AtomicLong unchanged = new AtomicLong();
+		private AtomicLong copied = new AtomicLong();
+		private AtomicLong bytes = new AtomicLong();
+		private AtomicLong deleted = new AtomicLong();
+		private AtomicLong failed = new AtomicLong();
+		private long started = System.nanoTime();
+		private long elapsed = 0L;
+		
+		private void stop() {
+			elapsed = System.nanoTime() - started;
+		}
+		
+		public Long getChecked() {
+			return checked.get();
+		}
+		public Long getUnchanged() {
+			return unchanged.get();
+		}
+		public Long getCopied() {
+			return copied.get();
+		}
+		public Long getBytes() {
+			return bytes.get();
+		}
+		public Long getDeleted() {
+			return deleted.get();
+		}
+		public Long getFailed() {
+			return failed.get();
+		}
+		public Long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsed);
+		}
+		
+		@Override
+		public String toString() {
+			return checked + " files checked, " + copied + " copied (" + bytes + " bytes), " + 
+				deleted + " deleted, " + unchanged + " unchanged, " + failed + " failed, in " + getElapsedMillis() + " ms";
+		}
+	}
+}
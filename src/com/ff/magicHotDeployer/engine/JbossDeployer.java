@@ -7,25 +7,104 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchEvent;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FileUtils;
 
 import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.configuration.PathFilter;
 import com.ff.magicHotDeployer.logging.Logger;
 
 public class JbossDeployer {
 	
-	public static Boolean processEvent(
-			ConfigurationProvider cfg,
+	private ConfigurationProvider cfg;
+	private DeployFingerprintCache fingerprints = null;
+	private SourceRouter router;
+	private TrashBin trash = null;
+	
+	private AtomicLong filesCopied = new AtomicLong();
+	private AtomicLong bytesCopied = new AtomicLong();
+	private AtomicLong filesSkipped = new AtomicLong();
+	private AtomicLong deletes = new AtomicLong();
+	private AtomicLong moves = new AtomicLong();
+	
+	public JbossDeployer(ConfigurationProvider cfg) {
+		this.cfg = cfg;
+		
+		this.router = new SourceRouter(cfg);
+		
+		if (cfg.getFingerprintCache()) {
+			FingerprintIndex index = null;
+			if (cfg.getFingerprintIndex()) {
+				index = new FingerprintIndex(FingerprintIndex.fileFor(cfg.getFingerprintIndexFile(), cfg.getName()));
+			}
+			this.fingerprints = new DeployFingerprintCache(index);
+		}
+		else if (cfg.getFingerprintIndex()) {
+			Logger.warn("[ " + cfg.getName() + " ] fingerprintIndex ignored, it needs fingerprintCache");
+		}
+		
+		if (cfg.isTrashDelete()) {
+			this.trash = new TrashBin(cfg.getName());
+		}
+	}
+	
+	/**
+	 * single attempt at reflecting an event on the deployment, routed to the source folder it belongs to.
+	 * failures are rethrown to the caller, which is in charge of scheduling retries (see RetryScheduler)
+	 */
+	public Boolean processEvent(Path eventFilePath, WatchEvent.Kind<?> eventType, Path deploymentFolder) throws IOException {
+		SourceRouter.Route route = router.route(eventFilePath);
+		if (route == null) {
+			Logger.warn("event outside of any source folder : " + eventFilePath);
+			return false;
+		}
+		return applyEvent(eventFilePath, eventType, route.toTarget(eventFilePath, deploymentFolder), deploymentFolder);
+	}
+	
+	/**
+	 * moves the deployed copy of a renamed source folder along with it.
+	 * failures are rethrown to the caller, which is in charge of scheduling retries (see RetryScheduler)
+	 *
+	 * @param movedFrom the source folder before being renamed
+	 * @param movedTo the source folder after being renamed
+	 */
+	public Boolean processMove(Path movedFrom, Path movedTo, Path deploymentFolder) throws IOException {
+		SourceRouter.Route fromRoute = router.route(movedFrom);
+		SourceRouter.Route toRoute = router.route(movedTo);
+		if (fromRoute == null || toRoute == null) {
+			Logger.warn("move outside of any source folder : " + movedFrom + " -> " + movedTo);
+			return false;
+		}
+		return hotMoveFolder(
+			movedTo.toFile(), 
+			fromRoute.toTarget(movedFrom, deploymentFolder).toFile(), 
+			toRoute.toTarget(movedTo, deploymentFolder).toFile()
+		);
+	}
+	
+	/**
+	 * single attempt at reflecting an event on the deployment, for a single explicit source folder.
+	 * failures are rethrown to the caller, which is in charge of scheduling retries (see RetryScheduler)
+	 */
+	public Boolean processEvent(
 			Path eventFilePath, 
 			WatchEvent.Kind<?> eventType, 
 			Path baseSourcePath, 
@@ -33,41 +112,10 @@ public class JbossDeployer {
 			String targetInnerPath
 		) throws IOException
 	{
-		Integer attempt = 1;
-		Boolean goOn = true;
-		
-		while (goOn) {
-			try {
-				trySingleProcessEvent(cfg, eventFilePath, eventType, baseSourcePath, baseTargetFolder, targetInnerPath);
-				goOn = false;
-			}
-			catch (Exception e) {
-				Logger.debug("event process attempt #" + attempt + " failed");
-				Logger.warn("event process attempt #" + attempt + " failed", e);
-				
-				if (attempt > cfg.getMaxRetries()) {
-					Logger.warn("max retries reached for event process. aborting");
-					goOn = false;
-					throw e;
-				}
-				else {
-					attempt ++;
-					Logger.debug("retrying - attempt #" + attempt);
-					
-					try {
-						Thread.sleep(cfg.getRetryDelay());
-					} catch (InterruptedException e2) {
-						e2.printStackTrace();
-					}
-				}
-			}
-		}
-		
-		return true;
+		return trySingleProcessEvent(eventFilePath, eventType, baseSourcePath, baseTargetFolder, targetInnerPath);
 	}
 	
-	public static Boolean trySingleProcessEvent(
-		ConfigurationProvider cfg,
+	public Boolean trySingleProcessEvent(
 		Path eventFilePath, 
 		WatchEvent.Kind<?> eventType, 
 		Path baseSourcePath, 
@@ -75,27 +123,27 @@ public class JbossDeployer {
 		String targetInnerPath
 	) throws IOException {
 
-		if (targetInnerPath != null && !"".equals(targetInnerPath)) {
-			baseTargetFolder = Paths.get(baseTargetFolder.toAbsolutePath().toString(), targetInnerPath);
-		}
+		baseTargetFolder = resolveTargetBase(baseTargetFolder, targetInnerPath);
 		
 		Path targetPath = reflectSourceToTargetPath(
 			eventFilePath.toAbsolutePath().toString(), 
 			baseSourcePath.toAbsolutePath().toString(), 
 			baseTargetFolder.toAbsolutePath().toString()
 		);
-
+		
+		return applyEvent(eventFilePath, eventType, targetPath, baseTargetFolder);
+	}
+	
+	private Boolean applyEvent(Path eventFilePath, WatchEvent.Kind<?> eventType, Path targetPath, Path deploymentFolder) throws IOException {
 		Boolean isFolder = (
 			targetPath.toFile().exists() ? 
 					targetPath.toFile().isDirectory() :
 					eventFilePath.toFile().isDirectory()
 		);
 
-		if (!isFolder && cfg.getFilterPattern() != null) {
-			if (!cfg.getFilterPattern().matcher(eventFilePath.toAbsolutePath().toString()).find()) {
-				Logger.trace("file excluded by filter : " + eventFilePath.toAbsolutePath().toString());
-				return false;
-			}
+		if (!isFolder && !accepts(eventFilePath)) {
+			Logger.tracef("file excluded by filter : {}", eventFilePath);
+			return false;
 		}
 		
 		if (eventType == ENTRY_CREATE) {
@@ -110,7 +158,7 @@ public class JbossDeployer {
 		else if (eventType == ENTRY_DELETE) {
 			if (isFolder) {
 				// folder deleted
-				hotUndeployFolder(targetPath.toFile());
+				hotUndeployFolder(targetPath.toFile(), deploymentFolder);
 			}
 			else {
 				// file deleted
@@ -135,7 +183,31 @@ public class JbossDeployer {
 		return true;
 	}
 	
-	public static Boolean hotDeployNewFolder(File source, File target) throws IOException {
+	/**
+	 * @return false if the file is excluded by the include / exclude rules or by the legacy filter
+	 */
+	public Boolean accepts(Path sourceFile) {
+		PathFilter pathFilter = cfg.getPathFilter();
+		if (pathFilter != null && !pathFilter.isEmpty()) {
+			SourceRouter.Route route = router.route(sourceFile);
+			if (route != null && !pathFilter.acceptsFile(route.getSource().relativize(sourceFile))) {
+				return false;
+			}
+		}
+		if (cfg.getFilterPattern() == null) {
+			return true;
+		}
+		return cfg.getFilterPattern().matcher(sourceFile.toAbsolutePath().toString()).find();
+	}
+	
+	public static Path resolveTargetBase(Path baseTargetFolder, String targetInnerPath) {
+		if (targetInnerPath != null && !"".equals(targetInnerPath)) {
+			return Paths.get(baseTargetFolder.toAbsolutePath().toString(), targetInnerPath);
+		}
+		return baseTargetFolder;
+	}
+	
+	public Boolean hotDeployNewFolder(File source, File target) throws IOException {
 		// register directory and sub-directories
 
 		final File sourceFinal = source;
@@ -145,7 +217,11 @@ public class JbossDeployer {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
             {
-            	Logger.trace("new file in created folder to deploy : " + file.toAbsolutePath().toString());
+            	if (!accepts(file)) {
+            		Logger.tracef("file in created folder excluded by filter : {}", file);
+            		return FileVisitResult.CONTINUE;
+            	}
+            	Logger.tracef("new file in created folder to deploy : {}", file);
             	
             	Path targetPath = reflectSourceToTargetPath(
             		file.toFile().getAbsolutePath(), 
@@ -162,49 +238,281 @@ public class JbossDeployer {
         return true;
 	}
 	
-	public static Boolean hotDeployFile(File source, File target) throws IOException {
-		Logger.trace("executing hotDeployFile from " + source.getAbsolutePath() + " to " + target.getAbsolutePath());
+	public Boolean hotDeployFile(File source, File target) throws IOException {
+		Logger.tracef("executing hotDeployFile from {} to {}", source, target);
 		if (!source.exists()) {
 			Logger.trace("skipping (missing)");
 			return false;
 		}
-		FileUtils.copyFile(source, target);
+		if (fingerprints != null && fingerprints.isUpToDate(source, target)) {
+			Logger.debugf("skipping unchanged {} (fingerprint cache hits {}, misses {})", 
+				target, fingerprints.getHits(), fingerprints.getMisses());
+			filesSkipped.incrementAndGet();
+			return false;
+		}
+		
+		// the source as it was before copying: a change made meanwhile must not look deployed already
+		long size = source.length();
+		long modified = source.lastModified();
+		if (cfg.isAtomicCopy()) {
+			copyFileAtomically(source, target, modified);
+		}
+		else {
+			FileUtils.copyFile(source, target, false);
+			target.setLastModified(modified);
+		}
+		filesCopied.incrementAndGet();
+		bytesCopied.addAndGet(target.length());
+		
+		if (fingerprints != null) {
+			if (target.length() == size && source.length() == size && source.lastModified() == modified) {
+				fingerprints.recordDeployed(target, size, modified);
+			}
+			else {
+				// the event for the change will copy it again
+				Logger.debugf("{} changed while being copied, not recorded as deployed", source);
+				fingerprints.forget(target);
+			}
+		}
 		return true;
 	}
 
-	public static Boolean hotUndeployFile(File target) throws IOException {
+	/**
+	 * copies source next to target with FileChannel.transferTo, then renames it over target,
+	 * so that readers never see a partially written file.
+	 * modification time is preserved as FileUtils.copyFile does; the temp file is created with the
+	 * default permissions (umask) as a plain copy would be, not the owner only ones of Files.createTempFile.
+	 */
+	public static void copyFileAtomically(File source, File target) throws IOException {
+		copyFileAtomically(source, target, source.lastModified());
+	}
+	
+	/**
+	 * @param modified modification time given to target, read from source before copying
+	 */
+	public static void copyFileAtomically(File source, File target, long modified) throws IOException {
+		File parent = target.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("cannot create target folder " + parent.getAbsolutePath());
+		}
+		
+		Path temp;
+		FileChannel created;
+		while (true) {
+			temp = parent.toPath().resolve("." + target.getName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".mhd-tmp");
+			try {
+				created = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+				break;
+			}
+			catch (FileAlreadyExistsException e) {
+				// left by a crashed copy, or taken by another worker: pick another name
+			}
+		}
+		try {
+			try (
+				FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel out = created
+			) {
+				long size = in.size();
+				long position = 0;
+				while (position < size) {
+					long transferred = in.transferTo(position, size - position, out);
+					if (transferred <= 0) {
+						// source has been truncated meanwhile: a new event will follow, and the short copy is not recorded as deployed
+						break;
+					}
+					position += transferred;
+				}
+			}
+			Files.setLastModifiedTime(temp, FileTime.fromMillis(modified));
+			
+			try {
+				Files.move(temp, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Logger.tracef("atomic move not supported for {}, replacing", target);
+				Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	public Boolean hotUndeployFile(File target) throws IOException {
+		if (fingerprints != null) {
+			fingerprints.forget(target);
+		}
 		if (!target.exists()) {
 			Logger.trace("skipping (missing)");
 			return false;
 		}
-		Logger.trace("executing hotUndeployFile from " + target.getAbsolutePath());
+		Logger.tracef("executing hotUndeployFile from {}", target);
 		target.delete();
+		deletes.incrementAndGet();
 		return true;
 	}
 
-	public static Boolean hotUndeployFolder(File target) throws IOException {
+	public Boolean hotUndeployFolder(File target) throws IOException {
+		if (fingerprints != null) {
+			fingerprints.forgetFolder(target);
+		}
 		if (!target.exists()) {
 			Logger.trace("skipping (missing)");
 			return false;
 		}
-		Logger.trace("executing hotUndeployFolder from " + target.getAbsolutePath());
+		Logger.tracef("executing hotUndeployFolder from {}", target);
 		FileUtils.deleteDirectory(target);
+		deletes.incrementAndGet();
+		return true;
+	}
+	
+	/**
+	 * renames the deployed folder from to target in place of deleting it and copying source again.
+	 * if it can't be renamed (e.g. target is already there) falls back to the latter
+	 */
+	public Boolean hotMoveFolder(File source, File from, File target) throws IOException {
+		if (fingerprints != null) {
+			fingerprints.forgetFolder(from);
+		}
+		if (from.exists() && !target.exists()) {
+			Logger.tracef("executing hotMoveFolder from {} to {}", from, target);
+			try {
+				Files.createDirectories(target.toPath().getParent());
+				Files.move(from.toPath(), target.toPath());
+				moves.incrementAndGet();
+				return true;
+			}
+			catch (IOException e) {
+				Logger.debug("cannot move " + from + " to " + target + " : " + e.getMessage() + ", copying again");
+			}
+		}
+		hotUndeployFolder(from);
+		return hotDeployNewFolder(source, target);
+	}
+	
+	/**
+	 * @param source true to count only files accepted by the include / exclude rules, as deploying the folder would;
+	 * false to count every file, as for a deployed folder
+	 * @param maxEntries files and folders to visit at most
+	 * @param maxMillis time to spend walking at most
+	 * @return null if the folder is too large to be walked within the limits
+	 */
+	public FolderSignature signatureOf(Path folder, final Boolean source, final int maxEntries, long maxMillis) throws IOException {
+		final Path root = folder;
+		final FolderSignature signature = new FolderSignature();
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis);
+		final int[] visited = { 0 };
+		final Boolean[] complete = { true };
+		
+		Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				return visit();
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (!source || accepts(file)) {
+					signature.add(root.relativize(file).toString(), attrs.size(), attrs.lastModifiedTime().toMillis());
+				}
+				return visit();
+			}
+			
+			private FileVisitResult visit() {
+				if (++ visited[0] > maxEntries || System.nanoTime() - deadline > 0) {
+					complete[0] = false;
+					return FileVisitResult.TERMINATE;
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return (complete[0] ? signature : null);
+	}
+	
+	/**
+	 * in trash delete mode the folder is moved out of the deployment and deleted in background,
+	 * otherwise (or if it can't be moved) it is deleted in place
+	 */
+	public Boolean hotUndeployFolder(File target, Path deploymentFolder) throws IOException {
+		if (trash == null) {
+			return hotUndeployFolder(target);
+		}
+		if (fingerprints != null) {
+			fingerprints.forgetFolder(target);
+		}
+		if (!target.exists()) {
+			Logger.trace("skipping (missing)");
+			return false;
+		}
+		Path trashFolder = trash.folderFor(cfg, deploymentFolder);
+		if (trashFolder == null || !trash.discard(target, trashFolder)) {
+			return hotUndeployFolder(target);
+		}
+		deletes.incrementAndGet();
 		return true;
 	}
+	
+	/**
+	 * @return true if target is known to have been deployed by this instance (or contains something that was)
+	 */
+	public Boolean isOwned(File target) {
+		return fingerprints != null && (fingerprints.contains(target) || fingerprints.containsUnder(target));
+	}
+	
+	/**
+	 * null unless deleteMode is trash
+	 */
+	public TrashBin getTrash() {
+		return trash;
+	}
+	
+	public SourceRouter getRouter() {
+		return router;
+	}
+	
+	public DeployFingerprintCache getFingerprints() {
+		return fingerprints;
+	}
+	
+	public Long getFilesCopied() {
+		return filesCopied.get();
+	}
+	
+	public Long getBytesCopied() {
+		return bytesCopied.get();
+	}
+	
+	/**
+	 * copies skipped because the fingerprint cache found the target up to date
+	 */
+	public Long getFilesSkipped() {
+		return filesSkipped.get();
+	}
+	
+	/**
+	 * deployed files and folders removed
+	 */
+	public Long getDeletes() {
+		return deletes.get();
+	}
+	
+	/**
+	 * deployed folders moved along with their renamed source folder
+	 */
+	public Long getMoves() {
+		return moves.get();
+	}
 
 	public static Path reflectSourceToTargetPath(String sourcePath, String sourceBase, String targetBase) {
-		if (Logger.isEnabled(Logger.LEVEL_TRACE)) {
-			Logger.trace("reflecting STT path from " + sourcePath);
-			Logger.trace("based at " + sourceBase);
-			Logger.trace("to " + targetBase);
-		}
+		Logger.tracef("reflecting STT path from {}", sourcePath);
+		Logger.tracef("based at {}", sourceBase);
+		Logger.tracef("to {}", targetBase);
 		
 		String relative = new File(sourceBase).toURI().relativize(new File(sourcePath).toURI()).getPath();
 		Path targetPath = Paths.get(targetBase, relative);
 		
-		if (Logger.isEnabled(Logger.LEVEL_TRACE)) {
-			Logger.trace("reflected to " + targetPath.toAbsolutePath().toString());
-		}
+		Logger.tracef("reflected to {}", targetPath);
 		
 		return targetPath;
 	}
@@ -253,7 +561,8 @@ public class JbossDeployer {
 		directories = file.list(new FilenameFilter() {
 			@Override
 			public boolean accept(File current, String name) {
-				return new File(current, name).isDirectory();
+				// a trash folder configured in here is not a package, whatever the prefix
+				return new File(current, name).isDirectory() && !name.startsWith(TrashBin.TRASH_PREFIX);
 			}
 		});
 		
@@ -288,7 +597,7 @@ public class JbossDeployer {
 			public boolean accept(File current, String name) {
 				Matcher m = p.matcher(name);
 				Boolean matches = m.find();
-				Logger.trace("matching " + name + " against {tmp[0-9]+" + matchPrefixF + "} : " + matches);
+				Logger.tracef("matching {} against [tmp[0-9]+{}] : {}", name, matchPrefixF, matches);
 				return new File(current, name).isDirectory() && name.startsWith("tmp") && matches;
 			}
 		});
@@ -0,0 +1,111 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock free histogram of latencies, in microseconds.
+ *
+ * values below 16 us get a bucket each, above that every power of two is split
+ * in 8 buckets, so that percentiles are reported with at most 12.5% error.
+ * recording never allocates, reading is meant for monitoring and is not atomic.
+ */
+public class LatencyHistogram {
+
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// 2^40 us is about 12 days
+	private static final int MAX_EXPONENT = 40;
+	// powers of two from 2^4 (the first after the linear buckets) to 2^(MAX_EXPONENT - 1), then one for anything longer
+	private static final int OVERFLOW_BUCKET = LINEAR_BUCKETS + (MAX_EXPONENT - 4) * SUB_BUCKETS;
+	private static final int BUCKETS = OVERFLOW_BUCKET + 1;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private AtomicLong total = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+	private AtomicLong sum = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+		counts.incrementAndGet(bucketOf(micros));
+		total.incrementAndGet();
+		sum.addAndGet(micros);
+
+		long current;
+		while (micros > (current = max.get())) {
+			if (max.compareAndSet(current, micros)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket holding the percentile, in microseconds (0 if empty)
+	 */
+	public long getPercentile(double percentile) {
+		long count = total.get();
+		if (count == 0) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i ++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getMean() {
+		long count = total.get();
+		return count == 0 ? 0L : sum.get() / count;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i ++) {
+			counts.set(i, 0L);
+		}
+		total.set(0L);
+		sum.set(0L);
+		max.set(0L);
+	}
+
+	private static int bucketOf(long micros) {
+		if (micros < LINEAR_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent >= MAX_EXPONENT) {
+			return OVERFLOW_BUCKET;
+		}
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		if (bucket == OVERFLOW_BUCKET) {
+			// capped by the max in getPercentile
+			return Long.MAX_VALUE;
+		}
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+		int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (SUB_BUCKETS + sub) * width + width - 1;
+	}
+}
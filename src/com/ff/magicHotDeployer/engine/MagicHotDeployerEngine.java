@@ -8,19 +8,30 @@ import static java.nio.file.LinkOption.*;
 
 import java.io.IOException;
 import java.net.URI;
-import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.configuration.PathFilter;
 import com.ff.magicHotDeployer.logging.Logger;
 
 public class MagicHotDeployerEngine {
@@ -28,178 +39,941 @@ public class MagicHotDeployerEngine {
 	private ConfigurationProvider cfg;
 	
 	private String instanceName;
-	private WatchService watcher;
-    private Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
-    private Path targetFolder;
+	private WatchBackend watchService;
+	private BlockingQueue<DeployEvent> inbox;
+    private DeploymentPathResolver deploymentPath;
     private Boolean recursive;
-    private String targetInnerPath = "";
     private Long counter = 0L;
+    private SourceRouter router;
+    private EventCoalescer coalescer = null;
+    private RenameDetector renames = null;
+    private StormDetector storm = null;
+    private DeployWorkerPool workerPool;
+    private JbossDeployer deployer;
+    private RetryScheduler retries;
+    private FolderExclusions exclusions;
+    private Path watchFrom = null;
+    private Integer openRoots = 0;
+    private WatchSubscriber subscriber;
+    private ExecutorService resyncExecutor;
+    private Set<Path> pendingResyncs = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private AtomicBoolean resyncQueued = new AtomicBoolean(false);
+    private Set<Path> lostFolders = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+    private AtomicInteger lostClosures = new AtomicInteger();
+    private Boolean batching;
+    private Long batchCounter = 0L;
+    private DeployBatch currentBatch = null;
+    private List<DeployEvent> queuedBatch = new ArrayList<DeployEvent>();
+    private Long queuedBatchRaw = 0L;
+    private ExecutorService batchExecutor;
+    private EngineMetrics metrics;
     
-	public MagicHotDeployerEngine(ConfigurationProvider cfg) {
+	// queued by the watcher when the watched root goes away
+	private static final DeployEvent CLOSED = new DeployEvent(null, null);
+	// queued by the watcher after events could not fit in the inbox, to wake up the watch loop
+	private static final DeployEvent LOST = new DeployEvent(null, null);
+	
+	public MagicHotDeployerEngine(ConfigurationProvider cfg, WatchBackend watchService) {
 		this.cfg = cfg;
+		this.watchService = watchService;
+		this.inbox = new LinkedBlockingQueue<DeployEvent>(cfg.getQueueSize());
 		this.recursive = cfg.getRecursive();
-		this.targetInnerPath = cfg.getJbossDeployedSubpath();
 		this.instanceName = "[ " + cfg.getName() + " ] ";
+		this.deployer = new JbossDeployer(cfg);
+		this.router = deployer.getRouter();
+		this.retries = new RetryScheduler(cfg);
+		this.deploymentPath = new DeploymentPathResolver(cfg);
+		this.exclusions = new FolderExclusions(cfg.getExcludeDirs());
+		
+		this.batching = cfg.isBatching();
+		if (batching) {
+			// the whole batch is folded, whatever the coalescing window
+			this.coalescer = new EventCoalescer(0L, cfg.getBatchQuietPeriod());
+		}
+		else if (cfg.getCoalesceWindow() != null && cfg.getCoalesceWindow() > 0) {
+			this.coalescer = new EventCoalescer(cfg.getCoalesceWindow());
+		}
+		
+		if (cfg.getRenameWindow() > 0 && !batching) {
+			this.renames = new RenameDetector(cfg.getRenameWindow(), deployer);
+		}
+		
+		if (cfg.isStormDetection() && !batching) {
+			this.storm = new StormDetector(cfg.getStormRate(), cfg.getStormQueueDepth(), cfg.getStormQuietPeriod(), cfg.getStormMaxFolders());
+		}
 	}
 	
-	public void registerFolder(Path folder) throws IOException {
-		WatchKey key = folder.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
-		keys.put(key, folder);
-		Logger.trace(this.instanceName + "folder registered to watchService: " + folder.toAbsolutePath().toString());
+	private Path getTargetFolder() {
+		Path deployment = deploymentPath.resolve();
+		if (deployer.getFingerprints() != null) {
+			deployer.getFingerprints().useDeployment(deployment);
+		}
+		return deployment;
 	}
 	
-	private void registerAllFolders(Path start) throws IOException {
-        // register directory and sub-directories
-        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
-            {
-            	registerFolder(dir);
-                return FileVisitResult.CONTINUE;
-            }
-        });
-    }
+	/**
+	 * the watched folder holding a source folder: exclusions are relative to it
+	 */
+	private Path watchRootOf(SourceRouter.Route route) {
+		return (watchFrom != null ? watchFrom : route.getSource());
+	}
 	
-	@SuppressWarnings("unchecked")
-    static <T> WatchEvent<T> cast(WatchEvent<?> event) {
-        return (WatchEvent<T>)event;
-    }
+	private void deploy(DeployEvent event) {
+		retries.track(event);
+		enqueue(event);
+	}
 	
-	private Path getTargetFolder() {
-		if (targetFolder != null) {
-        	if (!Files.exists(targetFolder)) {
-        		Logger.debug(this.instanceName + "cached path is no longer available");
-        		targetFolder = null;
-        	}
-        	else if (cfg.isJboss4()) {
-        		Logger.debug("jboss4 mode : reevaluating deployment path at each event");
-        		targetFolder = null;
-        	}
-        }
-        
-        if (targetFolder == null) {
-        	Logger.debug(this.instanceName + "running a new deployment path search");
-        	
-        	if (cfg.getFixedTarget() != null) {
-        		targetFolder = Paths.get(URI.create("file:///" + cfg.getFixedTarget()));
-        	}
-        	else {
-        		try {
-					targetFolder = JbossDeployer.findDeploymentPath(
-						cfg.getJbossHome(), 
-						cfg.getJbossDeployedPackagePrefix(),
-						cfg
-					);
-				} catch (IOException e) {
-					Logger.error("error looking for deployment path", e);
-					throw new RuntimeException(e);
-				}
-        	}
-        	
-        	Logger.debug(this.instanceName + "new deployment path is " + targetFolder.toAbsolutePath().toString());
-        }
-        
-        return targetFolder;
-	}
-	
-	private Boolean isInner(Path filePath, Path sourcePath) {
-		if (filePath.toAbsolutePath().startsWith(sourcePath.toAbsolutePath())) return true;
-		return false;
+	private void enqueue(DeployEvent event) {
+		try {
+			workerPool.submit(event);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("interrupted while queueing " + event, e);
+		}
 	}
 	
-	public void run() throws IOException {
-		watcher = FileSystems.getDefault().newWatchService();
+	// runs on the deploy workers
+	private void apply(DeployEvent event) {
+		if (!retries.isCurrent(event)) {
+			Logger.tracef("{}skipping superseded {}", this.instanceName, event);
+			done(event, true);
+			return;
+		}
+		
+		Path filePath = event.getPath();
+		WatchEvent.Kind<?> kind = event.getKind();
+		
+		try {
+			if (event.getMovedFrom() != null) {
+				deployer.processMove(event.getMovedFrom(), filePath, getTargetFolder());
+			}
+			else {
+				if (event.isReplacement() && Files.isDirectory(filePath, NOFOLLOW_LINKS)) {
+					// folder deleted and created again: clear what's left of the old one first
+					deployer.processEvent(filePath, ENTRY_DELETE, getTargetFolder());
+				}
+				deployer.processEvent(filePath, kind, getTargetFolder());
+			}
+			retries.completed(event);
+			metrics.eventDeployed(event);
+			done(event, true);
+		}
+		catch (Throwable e) {
+			Logger.warn(this.instanceName + "event process attempt #" + event.getAttempt() + " failed : " + event, e);
+			
+			Boolean scheduled = retries.schedule(event, new DeployEventHandler() {
+				@Override
+				public void handle(DeployEvent retry) {
+					enqueue(retry);
+				}
+			});
+			
+			if (!scheduled) {
+				Logger.error(this.instanceName + "max retries reached, cannot process event " + kind + " : " + filePath.toAbsolutePath().toString(), e);
+				done(event, false);
+			}
+		}
+		Logger.trace("--------------------------------------");
+	}
 	
-		Path sourcePath = Paths.get(URI.create("file:///" + cfg.getSourceFolder()));
+	private void flushCoalescer() {
+		long coalescedBefore = coalescer.getCoalesced();
+		List<DeployEvent> events = coalescer.drain();
+		long coalesced = coalescer.getCoalesced() - coalescedBefore;
 		
-		Path toRegister = sourcePath;
-		if (this.cfg.getWatchFrom() != null) {
-			toRegister = Paths.get(URI.create("file:///" + this.cfg.getWatchFrom()));
+		if (batching) {
+			applyBatch(events, events.size() + coalesced);
+			return;
+		}
+		
+		for (DeployEvent event : events) {
+			deploy(event);
+		}
+		
+		Logger.debugf("{}coalescing window flushed, {} events coalesced ({} of {} since start)",
+			this.instanceName, coalesced, coalescer.getCoalesced(), coalescer.getReceived());
+	}
+	
+	/**
+	 * hands a whole batch to the workers. batches never overlap, so nothing in a batch can be superseded
+	 * by a later event: while one is being applied the next is queued (folding together what comes meanwhile),
+	 * and started by the batch thread when the current one is complete. the watch loop never waits for them
+	 */
+	private void applyBatch(List<DeployEvent> events, long raw) {
+		if (events.isEmpty()) {
+			Logger.debugf("{}{} events in batch cancelled each other, nothing to apply", this.instanceName, raw);
+			return;
+		}
+		
+		synchronized (queuedBatch) {
+			if ((currentBatch != null && !currentBatch.isComplete()) || !queuedBatch.isEmpty()) {
+				queuedBatch.addAll(events);
+				queuedBatchRaw += raw;
+				Logger.debugf("{}{} events queued behind batch #{}", this.instanceName, queuedBatch.size(), currentBatch.getId());
+				return;
+			}
+			startBatch(events, raw);
+		}
+		deployBatch(events);
+	}
+	
+	/**
+	 * starts the queued batch once the one before has completed
+	 */
+	private void applyQueuedBatch(DeployBatch completed) {
+		List<DeployEvent> events;
+		synchronized (queuedBatch) {
+			if (currentBatch != completed || queuedBatch.isEmpty()) {
+				return;
+			}
+			events = new ArrayList<DeployEvent>(queuedBatch);
+			startBatch(events, queuedBatchRaw);
+			queuedBatch.clear();
+			queuedBatchRaw = 0L;
+		}
+		deployBatch(events);
+	}
+	
+	private void startBatch(List<DeployEvent> events, long raw) {
+		currentBatch = new DeployBatch(++ batchCounter, events.size(), raw);
+		for (DeployEvent event : events) {
+			event.setBatch(currentBatch);
+		}
+		Logger.debugf("{}starting batch #{} : {} events ({} raw)", this.instanceName, currentBatch.getId(), events.size(), raw);
+	}
+	
+	private void deployBatch(List<DeployEvent> events) {
+		for (DeployEvent event : events) {
+			deploy(event);
+		}
+	}
+	
+	/**
+	 * called once per event, when it's been applied or given up on
+	 */
+	private void done(DeployEvent event, Boolean success) {
+		final DeployBatch batch = event.getBatch();
+		if (batch == null || !batch.eventDone(success)) {
+			return;
+		}
+		
+		// queueing the next batch and completion actions may take a while, keep them off the workers
+		batchExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				applyQueuedBatch(batch);
+				completeBatch(batch);
+			}
+		});
+	}
+	
+	private void completeBatch(DeployBatch batch) {
+		if (batch.getFailed() > 0) {
+			Logger.warn(this.instanceName + batch);
+		}
+		else {
+			Logger.info(this.instanceName + batch);
+		}
+		
+		if (cfg.getBatchTouch() != null) {
+			Path touched = Paths.get(cfg.getBatchTouch());
+			try {
+				if (Files.exists(touched)) {
+					Files.setLastModifiedTime(touched, FileTime.fromMillis(System.currentTimeMillis()));
+				}
+				else {
+					Files.createFile(touched);
+				}
+				Logger.debug(this.instanceName + "touched " + touched.toAbsolutePath());
+			}
+			catch (IOException e) {
+				Logger.error(this.instanceName + "cannot touch " + touched.toAbsolutePath() + " after batch #" + batch.getId(), e);
+			}
+		}
+		
+		if (cfg.getBatchCommand() != null) {
+			runBatchCommand(batch);
+		}
+	}
+	
+	private void runBatchCommand(DeployBatch batch) {
+		String command = cfg.getBatchCommand();
+		ProcessBuilder builder;
+		if (System.getProperty("os.name").toLowerCase().startsWith("windows")) {
+			builder = new ProcessBuilder("cmd", "/c", command);
+		}
+		else {
+			builder = new ProcessBuilder("sh", "-c", command);
 		}
+		builder.inheritIO();
 		
+		try {
+			long started = System.nanoTime();
+			int exitCode = builder.start().waitFor();
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+			
+			if (exitCode != 0) {
+				Logger.warn(this.instanceName + "batch command exited with code " + exitCode + " after " + elapsed + " ms : " + command);
+			}
+			else {
+				Logger.debugf("{}batch command done in {} ms : {}", this.instanceName, elapsed, command);
+			}
+		}
+		catch (IOException e) {
+			Logger.error(this.instanceName + "cannot run batch command after batch #" + batch.getId() + " : " + command, e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * the marker is a file name matched anywhere, or a path relative to the source folder
+	 */
+	private Boolean isBatchMarker(Path filePath, SourceRouter.Route route) {
+		String marker = cfg.getBatchMarker();
+		if (marker == null) {
+			return false;
+		}
+		if (marker.contains("/")) {
+			return route.getSource().relativize(filePath).equals(Paths.get(marker));
+		}
+		return filePath.getFileName().toString().equals(marker);
+	}
+	
+	/**
+	 * deletes what previous runs left in the trash folder. the default one is in the jboss temp folder,
+	 * the deployment is needed only with a fixed target
+	 */
+	private void cleanTrashOnStartup() {
+		TrashBin trash = deployer.getTrash();
+		if (trash == null) {
+			return;
+		}
+		Path trashFolder = trash.folderFor(cfg, cfg.getFixedTarget() != null ? getTargetFolder() : null);
+		if (trashFolder == null) {
+			return;
+		}
+		try {
+			trash.open(trashFolder);
+		}
+		catch (IOException e) {
+			Logger.warn(this.instanceName + "cannot open trash folder " + trashFolder + " : " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * loads what previous runs deployed from the fingerprint index. as for the trash folder, without a fixed
+	 * target (or a startup sync, that searches for the deployment anyway) this is left to the first event
+	 */
+	private void openFingerprintIndexOnStartup() {
+		if (!cfg.getFingerprintCache() || !cfg.getFingerprintIndex() || cfg.getFixedTarget() == null || cfg.getSyncOnStartup()) {
+			return;
+		}
+		try {
+			getTargetFolder();
+		}
+		catch (RuntimeException e) {
+			Logger.warn(this.instanceName + "fingerprint index not loaded, no deployment found : " + e.getMessage());
+		}
+	}
+	
+	private void synchronizeOnStartup() {
+		Path deployment;
+		try {
+			deployment = getTargetFolder();
+		}
+		catch (RuntimeException e) {
+			Logger.warn(this.instanceName + "startup sync skipped, no deployment found : " + e.getMessage());
+			return;
+		}
+		
+		FolderSynchronizer synchronizer = new FolderSynchronizer(deployer, exclusions, cfg.getSyncDelete(), workerPool);
+		for (SourceRouter.Route route : router.getRoutes()) {
+			Path target = route.getTargetBase(deployment);
+			Logger.info(this.instanceName + "startup sync of " + route.getSource() + " into " + target);
+			FolderSynchronizer.SyncStats stats = synchronizer.synchronize(watchRootOf(route), route.getSource(), target, recursive);
+			Logger.info(this.instanceName + "startup sync done : " + stats);
+		}
+	}
+	
+	/**
+	 * events have been lost in folder: rescan it (and its subtree for recursive instances)
+	 * against the target on the background resync thread, so that the watch loop keeps draining.
+	 * when many folders overflow at once (every key does, on linux) they are resynced together by a single task
+	 */
+	private void scheduleResync(Path folder) {
+		if (router.route(folder) == null) {
+			Logger.tracef("{}overflow outside source folder ignored : {}", this.instanceName, folder);
+			return;
+		}
+		if (!pendingResyncs.add(folder)) {
+			Logger.tracef("{}overflow in {} already pending", this.instanceName, folder);
+			return;
+		}
+		Logger.tracef("{}overflow in {}", this.instanceName, folder);
+		
+		if (resyncQueued.compareAndSet(false, true)) {
+			resyncExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					resyncPending();
+				}
+			});
+		}
+	}
+	
+	private void resyncPending() {
+		// folders added from now on are picked up by the next task
+		resyncQueued.set(false);
+		List<Path> requested = new ArrayList<Path>(pendingResyncs);
+		pendingResyncs.removeAll(requested);
+		
+		List<Path> folders = outermostFolders(requested);
+		Logger.warn(this.instanceName + "OVERFLOW EVENT RECEIVED in " + requested.size() + " folders - resync of " + folders.size() + " folders");
+		
+		for (Path folder : folders) {
+			try {
+				resync(folder);
+			}
+			catch (Throwable e) {
+				Logger.error(instanceName + "resync of " + folder + " failed, resources are probably out of sync", e);
+			}
+		}
+	}
+	
+	/**
+	 * @return folders sorted parents first, without those a recursive resync of another one already covers
+	 */
+	private List<Path> outermostFolders(List<Path> folders) {
+		Collections.sort(folders, new Comparator<Path>() {
+			@Override
+			public int compare(Path a, Path b) {
+				return Integer.compare(a.getNameCount(), b.getNameCount());
+			}
+		});
+		if (!recursive) {
+			return folders;
+		}
+		
+		Set<Path> kept = new HashSet<Path>();
+		List<Path> outermost = new ArrayList<Path>();
+		for (Path folder : folders) {
+			Boolean covered = false;
+			for (Path parent = folder.getParent(); parent != null && !covered; parent = parent.getParent()) {
+				covered = kept.contains(parent);
+			}
+			if (!covered) {
+				kept.add(folder);
+				outermost.add(folder);
+			}
+		}
+		return outermost;
+	}
+	
+	private void resync(Path folder) throws IOException {
 		if (recursive) {
-			registerAllFolders(toRegister);
+			// folders created while events were lost are not watched yet
+			SharedWatchService.RegistrationStats registration = watchService.refresh(subscriber, folder);
+			if (registration != null && registration.getRegistered() > 0) {
+				Logger.debug(this.instanceName + "resync of " + folder + " : " + registration);
+			}
+		}
+		
+		SourceRouter.Route route = router.route(folder);
+		Path target = route.toTarget(folder, getTargetFolder());
+		
+		FolderSynchronizer synchronizer = new FolderSynchronizer(deployer, exclusions, cfg.getSyncDelete(), workerPool);
+		FolderSynchronizer.SyncStats stats = synchronizer.synchronize(watchRootOf(route), folder, target, recursive);
+		Logger.info(this.instanceName + "resync of " + folder + " done : " + stats);
+	}
+	
+	/**
+	 * single events are not applied during a storm: marks what they touched instead
+	 */
+	private void markDirty(Path filePath, WatchEvent.Kind<?> kind) {
+		if (!recursive) {
+			storm.markDirty(router.route(filePath).getSource(), false);
+			return;
+		}
+		storm.markDirty(filePath.getParent(), false);
+		
+		Boolean folder = false;
+		if (kind == ENTRY_CREATE) {
+			folder = Files.isDirectory(filePath, NOFOLLOW_LINKS);
+		}
+		else if (kind == ENTRY_DELETE) {
+			try {
+				folder = Files.isDirectory(router.route(filePath).toTarget(filePath, getTargetFolder()), NOFOLLOW_LINKS);
+			}
+			catch (RuntimeException e) {
+				// no deployment, nothing to delete from
+			}
+		}
+		if (folder) {
+			// folders created or deleted as a whole: only their own events might have been seen
+			storm.markDirty(filePath, true);
+		}
+	}
+	
+	private void enterStorm() {
+		Logger.warn(this.instanceName + "event storm detected, single events are not applied until it settles");
+		
+		// what was waiting to be applied is taken care of by the final sync as well
+		if (renames != null) {
+			for (DeployEvent held : renames.releaseAll()) {
+				markDirty(held.getPath(), held.getKind());
+			}
+		}
+		if (coalescer != null && coalescer.hasPending()) {
+			for (DeployEvent pending : coalescer.drain()) {
+				markDirty(pending.getPath(), pending.getKind());
+			}
+		}
+	}
+	
+	/**
+	 * synchronizes the folders touched during the storm, in background
+	 */
+	private void settleStorm() {
+		final StormDetector.Storm ended = storm.end();
+		Logger.info(this.instanceName + "event storm settled : " + ended);
+		
+		resyncExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					synchronizeAfterStorm(ended);
+				}
+				catch (Throwable e) {
+					Logger.error(instanceName + "sync after event storm failed, resources are probably out of sync", e);
+				}
+			}
+		});
+	}
+	
+	private void synchronizeAfterStorm(StormDetector.Storm ended) throws IOException {
+		Path deployment = getTargetFolder();
+		List<FolderSynchronizer.SyncRequest> requests = new ArrayList<FolderSynchronizer.SyncRequest>();
+		
+		if (ended.isEverything()) {
+			for (SourceRouter.Route route : router.getRoutes()) {
+				if (recursive) {
+					watchService.refresh(subscriber, route.getSource());
+				}
+				requests.add(new FolderSynchronizer.SyncRequest(watchRootOf(route), route.getSource(), route.getTargetBase(deployment), recursive));
+			}
+		}
+		else {
+			for (int i = 0; i < ended.getFolders().size(); i ++) {
+				Path folder = ended.getFolders().get(i);
+				SourceRouter.Route route = router.route(folder);
+				if (route == null) {
+					// parent of a source folder
+					continue;
+				}
+				Boolean subFolders = recursive && ended.isRecursive(i);
+				if (subFolders && Files.isDirectory(folder, NOFOLLOW_LINKS)) {
+					// folders created in a hurry may have been missed by the watcher
+					watchService.refresh(subscriber, folder);
+				}
+				// deletions seen during the storm are applied as well, even without syncDelete
+				requests.add(new FolderSynchronizer.SyncRequest(watchRootOf(route), folder, route.toTarget(folder, deployment), subFolders, true));
+			}
+		}
+		
+		FolderSynchronizer synchronizer = new FolderSynchronizer(deployer, exclusions, cfg.getSyncDelete(), workerPool);
+		FolderSynchronizer.SyncStats stats = synchronizer.synchronize(requests);
+		Logger.info(this.instanceName + "sync after event storm done, " + requests.size() + " folders : " + stats);
+	}
+	
+	/**
+	 * include / exclude rules are evaluated before touching the filesystem:
+	 * only names not matching the include rules need a check, since they can still be folders
+	 */
+	private Boolean passesFilter(Path filePath, WatchEvent.Kind<?> kind, SourceRouter.Route route) {
+		PathFilter pathFilter = cfg.getPathFilter();
+		if (pathFilter == null || pathFilter.isEmpty()) {
+			return true;
+		}
+		
+		switch (pathFilter.evaluate(route.getSource().relativize(filePath))) {
+			case INCLUDED:
+				return true;
+			case EXCLUDED:
+				return false;
+			default:
+				if (kind == ENTRY_DELETE) {
+					// can't tell a deleted folder from a file here, the deployer will check the target
+					return true;
+				}
+				if (kind == ENTRY_MODIFY) {
+					// nothing to do on a folder modify anyway
+					return false;
+				}
+				return Files.isDirectory(filePath, NOFOLLOW_LINKS);
+		}
+	}
+	
+	/**
+	 * called on the watcher thread, which is shared by every instance: never waits for room in the inbox.
+	 * events that do not fit are remembered by folder and turned into a resync by the watch loop
+	 */
+	private void receive(DeployEvent event) {
+		if (inbox.offer(event)) {
+			return;
+		}
+		if (event == CLOSED) {
+			lostClosures.incrementAndGet();
+		}
+		else if (event.getKind() == OVERFLOW) {
+			lostFolders.add(event.getPath());
+		}
+		else {
+			lostFolders.add(event.getPath().getParent());
+		}
+		// the watch loop may have emptied the inbox in the meantime: if there's room, make sure it wakes up
+		inbox.offer(LOST);
+	}
+	
+	/**
+	 * schedules a resync of the folders whose events did not fit in the inbox
+	 *
+	 * @return true if the last watched root is gone
+	 */
+	private Boolean recoverLostEvents() {
+		if (!lostFolders.isEmpty()) {
+			Logger.warn(this.instanceName + "inbox full, events lost in " + lostFolders.size() + " folders");
+			Iterator<Path> it = lostFolders.iterator();
+			while (it.hasNext()) {
+				Path folder = it.next();
+				it.remove();
+				scheduleResync(folder);
+			}
+		}
+		Boolean stopped = false;
+		for (int closures = lostClosures.getAndSet(0); closures > 0; closures --) {
+			stopped = closeRoot();
+		}
+		return stopped;
+	}
+	
+	/**
+	 * a watched root is no longer accessible
+	 *
+	 * @return true if it was the last one
+	 */
+	private Boolean closeRoot() {
+		Logger.info(this.instanceName + "watched folder is no longer accessible");
+		if (-- openRoots > 0) {
+			return false;
+		}
+		// all directories are inaccessible
+		if (renames != null) {
+			for (DeployEvent released : renames.releaseAll()) {
+				dispatch(released);
+			}
+		}
+		if (coalescer != null && coalescer.hasPending()) {
+			flushCoalescer();
+		}
+		return true;
+	}
+	
+	public void run() throws IOException {
+		if (recursive && router.findNested() != null) {
+			// a nested folder would be synchronized twice, into two different targets
+			throw new RuntimeException("source folder " + router.findNested().getSource() + " is inside another source folder of the same instance");
+		}
+		
+		List<Path> watchedRoots = new ArrayList<Path>();
+		if (this.cfg.getWatchFrom() != null) {
+			watchFrom = Paths.get(URI.create("file:///" + this.cfg.getWatchFrom()));
+			watchedRoots.add(watchFrom);
 		}
 		else {
-			registerFolder(toRegister);
+			for (SourceRouter.Route route : router.getRoutes()) {
+				watchedRoots.add(route.getSource());
+			}
+		}
+		for (SourceRouter.Route route : router.getRoutes()) {
+			Logger.debug(this.instanceName + "source mapping " + route);
 		}
 		
-		Logger.debug(this.instanceName + "instance is UP and RUNNING");
+		workerPool = new DeployWorkerPool(cfg.getName(), cfg.getWorkers(), cfg.getQueueSize(), cfg.getVirtualWorkers(), new DeployEventHandler() {
+			@Override
+			public void handle(DeployEvent event) {
+				apply(event);
+			}
+		});
+		workerPool.start();
 		
+		// from here on everything started must be stopped, the instance may be restarted after a failure
+		try {
+			metrics = new EngineMetrics(cfg.getName(), inbox, coalescer, workerPool, deployer, retries, storm);
+			metrics.register();
+			
+			batchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "mhd-" + cfg.getName() + "-batch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			
+			resyncExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "mhd-" + cfg.getName() + "-resync");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+			
+			subscriber = new WatchSubscriber() {
+				@Override
+				public void onEvent(Path path, WatchEvent.Kind<?> kind) {
+					receive(new DeployEvent(path, kind));
+				}
+				@Override
+				public void onOverflow(Path folder) {
+					receive(new DeployEvent(folder, OVERFLOW));
+				}
+				@Override
+				public void onClosed() {
+					receive(CLOSED);
+				}
+			};
+			for (Path watchedRoot : watchedRoots) {
+				SharedWatchService.RegistrationStats registration = watchService.subscribe(
+					subscriber, watchedRoot, recursive, exclusions
+				);
+				openRoots ++;
+				Logger.info(this.instanceName + "watching " + watchedRoot + " : " + registration);
+			}
+			Logger.debug(this.instanceName + watchService.describe());
+			
+			cleanTrashOnStartup();
+			openFingerprintIndexOnStartup();
+			
+			if (cfg.getSyncOnStartup()) {
+				// changes made from now on are already queued in the inbox
+				synchronizeOnStartup();
+			}
+			
+			Logger.debug(this.instanceName + "instance is UP and RUNNING");
+			
+			watchLoop();
+		}
+		finally {
+			if (subscriber != null) {
+				watchService.unsubscribe(subscriber);
+			}
+			workerPool.shutdown();
+			if (resyncExecutor != null) {
+				resyncExecutor.shutdownNow();
+			}
+			if (batchExecutor != null) {
+				batchExecutor.shutdown();
+			}
+			retries.shutdown();
+			if (deployer.getTrash() != null) {
+				deployer.getTrash().shutdown();
+			}
+			if (deployer.getFingerprints() != null) {
+				deployer.getFingerprints().close();
+			}
+			deploymentPath.close();
+			if (metrics != null) {
+				metrics.unregister();
+				Logger.debug(this.instanceName + "stopped : " + metrics);
+			}
+		}
+	}
+	
+	private void watchLoop() {
 		while (true) {
 
-            WatchKey key;
+			DeployEvent received;
 		    try {
-		        key = watcher.take();
+		    	long wait = getMillisToWait();
+		    	if (wait != EventCoalescer.NO_DEADLINE) {
+		    		received = inbox.poll(wait, TimeUnit.MILLISECONDS);
+		    	}
+		    	else {
+		    		received = inbox.take();
+		    	}
 		    } catch (InterruptedException x) {
 		        throw new RuntimeException("main watch loop interrupted", x);
 		    }
-
-            Path dir = keys.get(key);
-            if (dir == null) {
-                Logger.error("watchkey not recognized " + key.toString());
-                continue;
-            }
-            
-		    for (WatchEvent<?> event: key.pollEvents()) {
-		        WatchEvent.Kind<?> kind = event.kind();
-		        
-		        if (kind == OVERFLOW) {
-		        	Logger.warn(this.instanceName + "OVERFLOW EVENT RECEIVED - resources are probably out of sync");
-		            continue;
-		        }
-
-		        // The filename is the context of the event.
-		        WatchEvent<Path> ev = cast(event);
-		        
-		        Path filename = ev.context();
-
-		        Path filePath;
-		        try {
-		        	filePath = dir.resolve(filename);
-		        } catch (Exception e) {
-		            Logger.error(this.instanceName + "error resolving changed file " + filename.toString(), e);
-		            continue;
-		        }
-
-		        if (this.cfg.getWatchFrom() != null) {
-		        	if (!isInner(filePath, sourcePath)) {
-		        		Logger.trace(this.instanceName + "event skipped (not in watched dir) #" + (this.counter) + " : " + kind.toString() + " " + filePath);
-		        	}
-		        }
-		        
-		        Logger.debug(this.instanceName + "event #" + (this.counter) + " : " + kind.toString() + " " + filePath);
-		        this.counter ++;
-		        
-		        if (recursive && (kind == ENTRY_CREATE)) {
-                    try {
-                        if (Files.isDirectory(filePath, NOFOLLOW_LINKS)) {
-                        	registerAllFolders(filePath);
-                        }
-                    } catch (IOException x) {
-                        Logger.error(this.instanceName + "a folder has been created but recursive registering failed: " + filePath.toString());
-                    }
-                }
-		        
-		        try {
-		        	JbossDeployer.processEvent(cfg, filePath, kind, sourcePath, getTargetFolder(), targetInnerPath);
-		        }
-		        catch (Throwable e) {
-		        	Logger.error(this.instanceName + "cannot process event " + kind + " : " + filePath.toAbsolutePath().toString(), e);
-		        }
-		        Logger.trace("--------------------------------------");
+		    
+		    if ((received == LOST || !lostFolders.isEmpty() || lostClosures.get() > 0) && recoverLostEvents()) {
+		    	return;
 		    }
-
-            // reset key and remove from set if directory no longer accessible
-            boolean valid = key.reset();
-            if (!valid) {
-                keys.remove(key);
-                // all directories are inaccessible
-                if (keys.isEmpty()) {
-                    break;
-                }
-            }
+		    if (received == LOST) {
+		    	continue;
+		    }
+		    
+		    if (received == null) {
+		    	// coalescing or rename window expired with no further events
+		    	if (renames != null) {
+		    		for (DeployEvent released : renames.releaseExpired()) {
+		    			dispatch(released);
+		    		}
+		    	}
+		    	if (coalescer != null && coalescer.isDue()) {
+		    		flushCoalescer();
+		    	}
+		    	if (storm != null && storm.isSettled()) {
+		    		settleStorm();
+		    	}
+		    	continue;
+		    }
+		    
+		    if (received == CLOSED) {
+		    	if (closeRoot()) {
+		    		return;
+		    	}
+		    	continue;
+		    }
+		    
+		    WatchEvent.Kind<?> kind = received.getKind();
+		    Path filePath = received.getPath();
+		    
+		    if (kind == OVERFLOW) {
+		    	scheduleResync(filePath);
+		    	continue;
+		    }
+		    
+		    metrics.eventReceived();
+		    
+		    SourceRouter.Route route = router.route(filePath);
+		    if (route == null) {
+		    	// watchFrom covers more than the source folders
+		    	Logger.tracef("{}event skipped (not in watched dir) #{} : {} {}", this.instanceName, this.counter, kind, filePath);
+		    	metrics.eventFiltered();
+		    	continue;
+		    }
+		    
+		    if (isBatchMarker(filePath, route)) {
+		    	// the build is done: whatever has been collected so far is the batch
+		    	if (kind != ENTRY_DELETE && coalescer.hasPending()) {
+		    		Logger.debugf("{}batch marker {} : {}", this.instanceName, kind, filePath);
+		    		flushCoalescer();
+		    	}
+		    	continue;
+		    }
+		    
+		    if (!passesFilter(filePath, kind, route)) {
+		    	Logger.tracef("{}event filtered #{} : {} {}", this.instanceName, this.counter, kind, filePath);
+		    	metrics.eventFiltered();
+		    	continue;
+		    }
+		    
+		    Logger.debugf("{}event #{} : {} {}", this.instanceName, this.counter, kind, filePath);
+		    this.counter ++;
+		    
+		    if (storm != null) {
+		    	Boolean wasInStorm = storm.isInStorm();
+		    	if (storm.record(inbox.size() + workerPool.getQueueDepth())) {
+		    		if (!wasInStorm) {
+		    			enterStorm();
+		    		}
+		    		markDirty(filePath, kind);
+		    		continue;
+		    	}
+		    }
+		    
+		    if (renames != null && detectRename(received)) {
+		    	continue;
+		    }
+		    
+		    dispatch(received);
+		}
+	}
+	
+	private long getMillisToWait() {
+		long wait = EventCoalescer.NO_DEADLINE;
+		if (coalescer != null && coalescer.hasPending()) {
+			wait = coalescer.getMillisToFlush();
+		}
+		if (renames != null) {
+			wait = Math.min(wait, renames.getMillisToRelease());
+		}
+		if (storm != null) {
+			wait = Math.min(wait, storm.getMillisToSettle());
+		}
+		return wait;
+	}
+	
+	private void dispatch(DeployEvent event) {
+		if (coalescer != null) {
+			coalescer.add(event.getPath(), event.getKind());
+			if (coalescer.isDue()) {
+				flushCoalescer();
+			}
+		}
+		else {
+			deploy(event);
 		}
 	}
 	
+	/**
+	 * holds deletions of deployed folders, and pairs folders created meanwhile with them
+	 *
+	 * @return true if the event has been taken care of
+	 */
+	private Boolean detectRename(DeployEvent event) {
+		Path filePath = event.getPath();
+		
+		if (event.getKind() == ENTRY_CREATE && renames.hasHeld() && Files.isDirectory(filePath, NOFOLLOW_LINKS)
+				&& (coalescer == null || !coalescer.isPending(filePath))) {
+			DeployEvent deleted = null;
+			try {
+				FolderSignature signature = renames.signatureOf(filePath);
+				if (signature == null) {
+					Logger.debugf("{}{} too large to look for a rename, deploying it as created", this.instanceName, filePath);
+				}
+				deleted = renames.match(filePath, signature);
+				if (deleted != null) {
+					Logger.debugf("{}{} renamed to {} ({})", this.instanceName, deleted.getPath(), filePath, signature);
+				}
+			}
+			catch (IOException e) {
+				Logger.tracef("{}cannot read created folder {} : {}", this.instanceName, filePath, e.getMessage());
+			}
+			if (deleted != null) {
+				for (DeployEvent released : renames.releaseRelated(filePath)) {
+					dispatch(released);
+				}
+				event.setMovedFrom(deleted.getPath());
+				event.setReceivedAt(deleted.getReceivedAt());
+				// moves are not folded, later events on the folder apply to the moved copy
+				deploy(event);
+				return true;
+			}
+		}
+		
+		for (DeployEvent released : renames.releaseRelated(filePath)) {
+			dispatch(released);
+		}
+		
+		if (event.getKind() == ENTRY_DELETE && (coalescer == null || !coalescer.isPending(filePath))) {
+			try {
+				SourceRouter.Route route = router.route(filePath);
+				Path target = route.toTarget(filePath, getTargetFolder());
+				if (Files.isDirectory(target, NOFOLLOW_LINKS)) {
+					renames.hold(event, target);
+					return true;
+				}
+			}
+			catch (RuntimeException e) {
+				// no deployment to look into, nothing to move either
+				Logger.tracef("{}not holding {} : {}", this.instanceName, filePath, e.getMessage());
+			}
+		}
+		return false;
+	}
+	
 }
@@ -0,0 +1,471 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * watches folders by scanning them at a fixed interval, for file systems whose native events
+ * are lost or late (docker bind mounts, network shares...).
+ *
+ * every scan lists the followed folders and compares each listing with the previous one, emitting
+ * the same create, delete and modify events as the native watch service: deletions first, so that
+ * a folder moved elsewhere can still be recognized as renamed (see RenameDetector).
+ * a listing is kept per folder as a few parallel arrays (names packed in a single char array,
+ * sizes and modification times in long arrays) rather than as an object per file.
+ * a scan costs a listing per folder and a stat per entry, however little changed (see PollingScanBenchmark).
+ *
+ * one per instance, each with its own interval and thread.
+ */
+public class PollingWatchService implements WatchBackend {
+
+	// size recorded for a folder
+	private static final long FOLDER = -1L;
+
+	// rough sizes for a 64 bit jvm with compressed oops, for the footprint report
+	private static final long LISTING_BYTES = 32 + 4 * 16;
+	private static final long MAP_ENTRY_BYTES = 40 + 80;
+
+	private String name;
+	private long intervalMillis;
+	private List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	private ScheduledExecutorService executor = null;
+
+	private long scans = 0L;
+	private long lastScanNanos = 0L;
+
+	public PollingWatchService(String name, long intervalMillis) {
+		this.name = name;
+		this.intervalMillis = intervalMillis;
+	}
+
+	/**
+	 * lists root (and its whole tree if recursive, minus the excluded folders), changes
+	 * found from the next scan on are delivered to subscriber
+	 */
+	@Override
+	public synchronized SharedWatchService.RegistrationStats subscribe(WatchSubscriber subscriber, Path root, Boolean recursive, FolderExclusions exclusions) throws IOException {
+		Subscription subscription = new Subscription(subscriber, root.toAbsolutePath(), recursive, exclusions);
+		SharedWatchService.RegistrationStats stats = new SharedWatchService.RegistrationStats();
+
+		// the root is listed right away, so that failures reach the caller
+		Listing listing = list(subscription, subscription.root);
+		subscription.listings.put(subscription.root, listing);
+		stats.count(true);
+		if (recursive) {
+			for (int i = 0; i < listing.count(); i ++) {
+				if (listing.sizes[i] == FOLDER) {
+					stats.count(baseline(subscription, subscription.root.resolve(listing.nameAt(i))));
+				}
+			}
+		}
+		subscriptions.add(subscription);
+		stats.stop();
+
+		start();
+		return stats;
+	}
+
+	/**
+	 * nothing to register: folders created meanwhile are found by the next scan
+	 */
+	@Override
+	public SharedWatchService.RegistrationStats refresh(WatchSubscriber subscriber, Path folder) throws IOException {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.subscriber == subscriber && subscription.recursive && subscription.covers(folder)) {
+				SharedWatchService.RegistrationStats stats = new SharedWatchService.RegistrationStats();
+				stats.stop();
+				return stats;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void unsubscribe(WatchSubscriber subscriber) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.subscriber == subscriber) {
+				subscriptions.remove(subscription);
+			}
+		}
+	}
+
+	@Override
+	public synchronized String describe() {
+		long folders = 0L;
+		long entries = 0L;
+		long bytes = 0L;
+		for (Subscription subscription : subscriptions) {
+			for (Listing listing : subscription.listings.values()) {
+				folders ++;
+				entries += listing.count();
+				bytes += LISTING_BYTES + MAP_ENTRY_BYTES + listing.names.length * 2L + listing.count() * (4L + 8L + 8L);
+			}
+		}
+		return "polling every " + intervalMillis + " ms : " + folders + " folders, " + entries + " entries, " +
+			(scans > 0 ? "last scan " + TimeUnit.NANOSECONDS.toMillis(lastScanNanos) + " ms" : "not scanned yet") +
+			", about " + (bytes / 1024) + " KB";
+	}
+
+	public long getScans() {
+		return scans;
+	}
+
+	private synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "mhd-" + PollingWatchService.this.name + "-poller");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// with a fixed delay a slow scan just postpones the next one
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					poll();
+				}
+				catch (Throwable e) {
+					// an exception would stop the scans for good
+					Logger.error("[ " + name + " ] polling scan failed", e);
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * scans every followed folder now and delivers what changed since the previous scan
+	 */
+	public void poll() {
+		List<Changes> found = new ArrayList<Changes>();
+		List<Subscription> closed = new ArrayList<Subscription>();
+
+		synchronized (this) {
+			long started = System.nanoTime();
+			for (Subscription subscription : subscriptions) {
+				Changes changes = new Changes(subscription.subscriber);
+				if (!scan(subscription, subscription.root, changes)) {
+					if (!Files.isDirectory(subscription.root)) {
+						closed.add(subscription);
+					}
+					continue;
+				}
+				if (!changes.isEmpty()) {
+					found.add(changes);
+				}
+			}
+			lastScanNanos = System.nanoTime() - started;
+			scans ++;
+			subscriptions.removeAll(closed);
+		}
+
+		// delivered out of the lock: subscribers may block when their queue is full
+		for (Changes changes : found) {
+			changes.deliver();
+		}
+		for (Subscription subscription : closed) {
+			subscription.subscriber.onClosed();
+		}
+	}
+
+	/**
+	 * compares folder with its previous listing, going down into the sub folders already known
+	 *
+	 * @return false if folder cannot be listed
+	 */
+	private Boolean scan(Subscription subscription, Path folder, Changes changes) {
+		Listing previous = subscription.listings.get(folder);
+		Listing current;
+		try {
+			current = list(subscription, folder);
+		}
+		catch (IOException e) {
+			// if gone, the deletion is found in the parent listing; otherwise it is compared again next time
+			Logger.tracef("cannot list {} : {}", folder, e.getMessage());
+			return false;
+		}
+		subscription.listings.put(folder, current);
+		if (previous == null) {
+			previous = Listing.EMPTY;
+		}
+
+		int i = 0;
+		int j = 0;
+		while (i < previous.count() || j < current.count()) {
+			int cmp = (i == previous.count() ? 1 : j == current.count() ? -1 : previous.compareNames(i, current, j));
+			if (cmp < 0) {
+				deleted(subscription, folder.resolve(previous.nameAt(i)), previous.sizes[i] == FOLDER, changes);
+				i ++;
+			}
+			else if (cmp > 0) {
+				created(subscription, folder.resolve(current.nameAt(j)), current.sizes[j] == FOLDER, changes);
+				j ++;
+			}
+			else {
+				boolean wasFolder = previous.sizes[i] == FOLDER;
+				boolean isFolder = current.sizes[j] == FOLDER;
+				if (wasFolder != isFolder) {
+					Path child = folder.resolve(current.nameAt(j));
+					deleted(subscription, child, wasFolder, changes);
+					created(subscription, child, isFolder, changes);
+				}
+				else if (!isFolder) {
+					if (previous.sizes[i] != current.sizes[j] || previous.modified[i] != current.modified[j]) {
+						changes.modified.add(folder.resolve(current.nameAt(j)));
+					}
+				}
+				else if (subscription.recursive) {
+					scan(subscription, folder.resolve(current.nameAt(j)), changes);
+				}
+				i ++;
+				j ++;
+			}
+		}
+		return true;
+	}
+
+	private void deleted(Subscription subscription, Path path, Boolean folder, Changes changes) {
+		changes.deleted.add(path);
+		if (folder) {
+			forget(subscription, path);
+		}
+	}
+
+	private void created(Subscription subscription, Path path, Boolean folder, Changes changes) {
+		changes.created.add(path);
+		if (folder && subscription.recursive) {
+			// deployed as a whole on creation, its content counts from now on
+			baseline(subscription, path);
+		}
+	}
+
+	/**
+	 * lists folder and its sub folders without reporting anything
+	 *
+	 * @return true if folder could be listed
+	 */
+	private Boolean baseline(Subscription subscription, Path folder) {
+		Listing listing;
+		try {
+			listing = list(subscription, folder);
+		}
+		catch (IOException e) {
+			Logger.tracef("cannot list {} : {}", folder, e.getMessage());
+			return false;
+		}
+		subscription.listings.put(folder, listing);
+		for (int i = 0; i < listing.count(); i ++) {
+			if (listing.sizes[i] == FOLDER) {
+				baseline(subscription, folder.resolve(listing.nameAt(i)));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * drops the listings of folder and of its sub folders
+	 */
+	private void forget(Subscription subscription, Path folder) {
+		Listing listing = subscription.listings.remove(folder);
+		if (listing == null) {
+			return;
+		}
+		for (int i = 0; i < listing.count(); i ++) {
+			if (listing.sizes[i] == FOLDER) {
+				forget(subscription, folder.resolve(listing.nameAt(i)));
+			}
+		}
+	}
+
+	private static Listing list(Subscription subscription, Path folder) throws IOException {
+		List<String> names = new ArrayList<String>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+			for (Path child : entries) {
+				if (subscription.isExcluded(child)) {
+					continue;
+				}
+				names.add(child.getFileName().toString());
+			}
+		}
+		Collections.sort(names);
+
+		int length = 0;
+		for (String name : names) {
+			length += name.length();
+		}
+		Listing listing = new Listing(names.size(), length);
+		int count = 0;
+		int end = 0;
+		for (String name : names) {
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(folder.resolve(name), BasicFileAttributes.class, NOFOLLOW_LINKS);
+			}
+			catch (IOException e) {
+				// deleted while listing
+				continue;
+			}
+			name.getChars(0, name.length(), listing.names, end);
+			end += name.length();
+			listing.ends[count] = end;
+			listing.sizes[count] = (attrs.isDirectory() ? FOLDER : attrs.size());
+			listing.modified[count] = (attrs.isDirectory() ? 0L : attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+			count ++;
+		}
+		return listing.trim(count);
+	}
+
+	/**
+	 * entries of a folder, sorted by name
+	 */
+	private static class Listing {
+
+		private static final Listing EMPTY = new Listing(0, 0);
+
+		private char[] names;
+		// end of each name in names
+		private int[] ends;
+		// FOLDER for folders
+		private long[] sizes;
+		// nanoseconds, 0 for folders
+		private long[] modified;
+
+		private Listing(int count, int length) {
+			this.names = new char[length];
+			this.ends = new int[count];
+			this.sizes = new long[count];
+			this.modified = new long[count];
+		}
+
+		private int count() {
+			return ends.length;
+		}
+
+		private int startOf(int i) {
+			return i == 0 ? 0 : ends[i - 1];
+		}
+
+		private String nameAt(int i) {
+			return new String(names, startOf(i), ends[i] - startOf(i));
+		}
+
+		/**
+		 * same order as String.compareTo, used to sort the names
+		 */
+		private int compareNames(int i, Listing other, int j) {
+			int a = startOf(i);
+			int aEnd = ends[i];
+			int b = other.startOf(j);
+			int bEnd = other.ends[j];
+			while (a < aEnd && b < bEnd) {
+				char ca = names[a ++];
+				char cb = other.names[b ++];
+				if (ca != cb) {
+					return ca - cb;
+				}
+			}
+			return (aEnd - a) - (bEnd - b);
+		}
+
+		/**
+		 * drops the room left by entries deleted while listing
+		 */
+		private Listing trim(int count) {
+			if (count == ends.length) {
+				return this;
+			}
+			Listing trimmed = new Listing(count, count == 0 ? 0 : ends[count - 1]);
+			System.arraycopy(names, 0, trimmed.names, 0, trimmed.names.length);
+			System.arraycopy(ends, 0, trimmed.ends, 0, count);
+			System.arraycopy(sizes, 0, trimmed.sizes, 0, count);
+			System.arraycopy(modified, 0, trimmed.modified, 0, count);
+			return trimmed;
+		}
+	}
+
+	private static class Subscription {
+		private WatchSubscriber subscriber;
+		private Path root;
+		private Boolean recursive;
+		private FolderExclusions exclusions;
+		private Map<Path, Listing> listings = new HashMap<Path, Listing>();
+
+		private Subscription(WatchSubscriber subscriber, Path root, Boolean recursive, FolderExclusions exclusions) {
+			this.subscriber = subscriber;
+			this.root = root;
+			this.recursive = recursive;
+			this.exclusions = (exclusions != null ? exclusions : new FolderExclusions(null));
+		}
+
+		private Boolean covers(Path dir) {
+			if (recursive) {
+				return dir.startsWith(root) && !exclusions.isExcludedAnywhere(root.relativize(dir));
+			}
+			return dir.equals(root);
+		}
+
+		/**
+		 * parents are not checked: excluded folders are never listed
+		 */
+		private Boolean isExcluded(Path path) {
+			if (!recursive || exclusions.isEmpty()) {
+				return false;
+			}
+			return exclusions.isExcluded(root.relativize(path));
+		}
+	}
+
+	/**
+	 * what a scan found for a subscriber
+	 */
+	private static class Changes {
+		private WatchSubscriber subscriber;
+		private List<Path> deleted = new ArrayList<Path>();
+		private List<Path> created = new ArrayList<Path>();
+		private List<Path> modified = new ArrayList<Path>();
+
+		private Changes(WatchSubscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		private Boolean isEmpty() {
+			return deleted.isEmpty() && created.isEmpty() && modified.isEmpty();
+		}
+
+		private void deliver() {
+			for (Path path : deleted) {
+				subscriber.onEvent(path, ENTRY_DELETE);
+			}
+			for (Path path : created) {
+				subscriber.onEvent(path, ENTRY_CREATE);
+			}
+			for (Path path : modified) {
+				subscriber.onEvent(path, ENTRY_MODIFY);
+			}
+		}
+	}
+}
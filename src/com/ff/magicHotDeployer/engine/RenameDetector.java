@@ -0,0 +1,174 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * pairs a deleted folder with a folder created shortly after, when they turn out to be the same one
+ * renamed or moved (as IDEs do when refactoring packages).
+ *
+ * deletions of deployed folders are held for a short window: a folder created meanwhile whose files match
+ * the deployed copy of a held one (same relative paths, sizes and modification times) takes its place,
+ * and the deployed copy can simply be moved. held deletions not claimed in time are released as they are.
+ *
+ * signatures are computed on the watch loop, so folders too large to be walked quickly
+ * (SIGNATURE_MAX_ENTRIES, SIGNATURE_MAX_MILLIS) are never paired: they go through a plain delete and create.
+ *
+ * not thread safe: it's meant to be used by the watch loop only.
+ */
+public class RenameDetector {
+
+	public static final int SIGNATURE_MAX_ENTRIES = 5000;
+	public static final long SIGNATURE_MAX_MILLIS = 50L;
+
+	private long windowNanos;
+	private JbossDeployer deployer;
+	private LinkedHashMap<Path, Held> held = new LinkedHashMap<Path, Held>();
+
+	private long paired = 0L;
+
+	public RenameDetector(long windowMillis, JbossDeployer deployer) {
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.deployer = deployer;
+	}
+
+	/**
+	 * @param target deployed copy of the deleted folder
+	 */
+	public void hold(DeployEvent delete, Path target) {
+		held.put(delete.getPath(), new Held(delete, target, System.nanoTime() + windowNanos));
+	}
+
+	public Boolean hasHeld() {
+		return !held.isEmpty();
+	}
+
+	/**
+	 * @return ms until the oldest held deletion is to be released, EventCoalescer.NO_DEADLINE if none is held
+	 */
+	public long getMillisToRelease() {
+		if (held.isEmpty()) {
+			return EventCoalescer.NO_DEADLINE;
+		}
+		long remaining = held.values().iterator().next().deadline - System.nanoTime();
+		if (remaining <= 0) return 0;
+		return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining));
+	}
+
+	/**
+	 * @return held deletions whose window is over, in the order they were received
+	 */
+	public List<DeployEvent> releaseExpired() {
+		List<DeployEvent> out = new ArrayList<DeployEvent>();
+		long now = System.nanoTime();
+		Iterator<Held> it = held.values().iterator();
+		while (it.hasNext()) {
+			Held h = it.next();
+			if (h.deadline - now > 0) {
+				break;
+			}
+			out.add(h.event);
+			it.remove();
+		}
+		return out;
+	}
+
+	/**
+	 * an event on path must not overtake the deletion of path, of a folder holding it or of a folder inside it
+	 *
+	 * @return held deletions to be applied before it
+	 */
+	public List<DeployEvent> releaseRelated(Path path) {
+		List<DeployEvent> out = new ArrayList<DeployEvent>();
+		Iterator<Held> it = held.values().iterator();
+		while (it.hasNext()) {
+			Held h = it.next();
+			Path heldPath = h.event.getPath();
+			if (heldPath.startsWith(path) || path.startsWith(heldPath)) {
+				out.add(h.event);
+				it.remove();
+			}
+		}
+		return out;
+	}
+
+	public List<DeployEvent> releaseAll() {
+		List<DeployEvent> out = new ArrayList<DeployEvent>(held.size());
+		for (Held h : held.values()) {
+			out.add(h.event);
+		}
+		held.clear();
+		return out;
+	}
+
+	/**
+	 * @return accepted files in a created folder, null if it is too large to be paired
+	 */
+	public FolderSignature signatureOf(Path created) throws IOException {
+		return deployer.signatureOf(created, true, SIGNATURE_MAX_ENTRIES, SIGNATURE_MAX_MILLIS);
+	}
+
+	/**
+	 * @param signature accepted files in the created folder
+	 * @return the held deletion of the same folder, removed from the held ones; null if none matches
+	 */
+	public DeployEvent match(Path created, FolderSignature signature) {
+		if (signature == null || signature.getFiles() == 0) {
+			// nothing to gain, and any empty folder would match
+			return null;
+		}
+		Iterator<Held> it = held.values().iterator();
+		while (it.hasNext()) {
+			Held h = it.next();
+			if (h.event.getPath().equals(created)) {
+				// same folder created again, not a rename
+				continue;
+			}
+			if (h.signature == null) {
+				try {
+					h.signature = deployer.signatureOf(h.target, false, SIGNATURE_MAX_ENTRIES, SIGNATURE_MAX_MILLIS);
+				}
+				catch (IOException e) {
+					Logger.tracef("cannot read deployed folder {} : {}", h.target, e.getMessage());
+				}
+				if (h.signature == null) {
+					// too large or unreadable, it won't match anything
+					h.signature = new FolderSignature();
+				}
+			}
+			if (h.signature.equals(signature)) {
+				it.remove();
+				paired ++;
+				return h.event;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * deletions paired with a creation so far
+	 */
+	public long getPaired() {
+		return paired;
+	}
+
+	private static class Held {
+		private DeployEvent event;
+		private Path target;
+		private long deadline;
+		private FolderSignature signature = null;
+
+		private Held(DeployEvent event, Path target, long deadline) {
+			this.event = event;
+			this.target = target;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * delayed retry queue for failed events.
+ *
+ * failed events are handed back to the workers after an exponential backoff with jitter,
+ * without blocking anybody while they wait. a newer event for the same path supersedes an older one,
+ * dropping its pending retry, only when it redoes the same work: the same kind, a file event over a file
+ * event, or a delete. anything else (a folder modify after a pending create) leaves both in flight.
+ */
+public class RetryScheduler {
+
+	private String name;
+	private Integer maxRetries;
+	private Integer baseDelay;
+	private Integer maxDelay;
+	private Integer jitterPercent;
+	
+	private ScheduledExecutorService timer;
+	private ConcurrentHashMap<Path, List<DeployEvent>> live = new ConcurrentHashMap<Path, List<DeployEvent>>();
+	private ConcurrentHashMap<DeployEvent, ScheduledFuture<?>> pending = new ConcurrentHashMap<DeployEvent, ScheduledFuture<?>>();
+	
+	private AtomicLong retries = new AtomicLong();
+	private AtomicLong failures = new AtomicLong();
+	private AtomicLong superseded = new AtomicLong();
+	
+	public RetryScheduler(ConfigurationProvider cfg) {
+		this.name = cfg.getName();
+		this.maxRetries = cfg.getMaxRetries();
+		this.baseDelay = cfg.getRetryDelay();
+		this.maxDelay = cfg.getRetryMaxDelay();
+		this.jitterPercent = cfg.getRetryJitter();
+		
+		final String threadName = "mhd-" + name + "-retry";
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, threadName);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * puts event in flight for its path, dropping the events it supersedes and their waiting retries
+	 */
+	public void track(final DeployEvent event) {
+		final Boolean folder = Files.isDirectory(event.getPath(), NOFOLLOW_LINKS);
+		final List<DeployEvent> dropped = new ArrayList<DeployEvent>();
+		
+		live.compute(event.getPath(), new BiFunction<Path, List<DeployEvent>, List<DeployEvent>>() {
+			@Override
+			public List<DeployEvent> apply(Path path, List<DeployEvent> events) {
+				List<DeployEvent> kept = new ArrayList<DeployEvent>(2);
+				if (events != null) {
+					for (DeployEvent previous : events) {
+						if (supersedes(event, previous, folder)) {
+							dropped.add(previous);
+						}
+						else {
+							kept.add(previous);
+						}
+					}
+				}
+				kept.add(event);
+				return kept;
+			}
+		});
+		
+		for (DeployEvent previous : dropped) {
+			ScheduledFuture<?> waiting = pending.remove(previous);
+			if (waiting != null && waiting.cancel(false)) {
+				superseded.incrementAndGet();
+				Logger.tracef("[ {} ] pending retry of {} superseded by {}", name, previous, event);
+			}
+		}
+	}
+	
+	/**
+	 * a delete makes anything before it pointless, otherwise only an event doing the same work does:
+	 * a folder modify only syncs the folder and cannot stand in for the create copying all of it
+	 */
+	private static Boolean supersedes(DeployEvent event, DeployEvent previous, Boolean folder) {
+		return event.getKind() == ENTRY_DELETE
+			|| event.getKind() == previous.getKind()
+			|| !folder;
+	}
+	
+	/**
+	 * @return false if a newer event superseding this one has been tracked meanwhile
+	 */
+	public Boolean isCurrent(DeployEvent event) {
+		List<DeployEvent> events = live.get(event.getPath());
+		return (events != null && indexOf(events, event) >= 0);
+	}
+	
+	public void completed(final DeployEvent event) {
+		live.computeIfPresent(event.getPath(), new BiFunction<Path, List<DeployEvent>, List<DeployEvent>>() {
+			@Override
+			public List<DeployEvent> apply(Path path, List<DeployEvent> events) {
+				int index = indexOf(events, event);
+				if (index < 0) {
+					return events;
+				}
+				List<DeployEvent> kept = new ArrayList<DeployEvent>(events);
+				kept.remove(index);
+				return (kept.isEmpty() ? null : kept);
+			}
+		});
+	}
+	
+	/**
+	 * the lists in live are never changed once published, so they can be read without locking
+	 */
+	private static int indexOf(List<DeployEvent> events, DeployEvent event) {
+		for (int i = 0; i < events.size(); i ++) {
+			if (events.get(i) == event) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * schedules a new attempt of a failed event.
+	 * @return false if the event ran out of attempts
+	 */
+	public Boolean schedule(final DeployEvent event, final DeployEventHandler resubmit) {
+		if (event.getAttempt() > maxRetries) {
+			failures.incrementAndGet();
+			completed(event);
+			return false;
+		}
+		
+		long delay = getDelay(event.getAttempt());
+		event.setAttempt(event.getAttempt() + 1);
+		retries.incrementAndGet();
+		
+		Logger.debugf("[ {} ] retrying {} in {} ms - attempt #{}", name, event, delay, event.getAttempt());
+		
+		Runnable retry = new Runnable() {
+			@Override
+			public void run() {
+				pending.remove(event);
+				if (isCurrent(event)) {
+					resubmit.handle(event);
+				}
+			}
+		};
+		
+		pending.put(event, timer.schedule(retry, delay, TimeUnit.MILLISECONDS));
+		return true;
+	}
+	
+	/**
+	 * retryDelay * 2^(attempt - 1), capped at retryMaxDelay, +/- retryJitter percent
+	 */
+	public long getDelay(Integer attempt) {
+		long delay = baseDelay;
+		for (int i = 1; i < attempt && delay < maxDelay; i ++) {
+			delay *= 2;
+		}
+		delay = Math.min(delay, maxDelay);
+		
+		if (jitterPercent > 0 && delay > 0) {
+			long spread = delay * jitterPercent / 100;
+			delay += ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+		}
+		return Math.max(0L, delay);
+	}
+	
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+	
+	public Long getRetries() {
+		return retries.get();
+	}
+	
+	public Long getFailures() {
+		return failures.get();
+	}
+	
+	public Long getSuperseded() {
+		return superseded.get();
+	}
+	
+	public Integer getPending() {
+		return pending.size();
+	}
+}
@@ -3,18 +3,23 @@ package com.ff.magicHotDeployer.engine;
 import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
 import com.ff.magicHotDeployer.logging.Logger;
 
-public class RunnableEngineInstance extends Thread {
+public class RunnableEngineInstance implements Runnable {
 
 	private ConfigurationProvider cfg;
+	private WatchBackend watchService;
 	
-	public RunnableEngineInstance(ConfigurationProvider cfg) {
+	public RunnableEngineInstance(ConfigurationProvider cfg, WatchBackend watchService) {
 		this.cfg = cfg;
+		this.watchService = watchService;
 	}
 
+	/**
+	 * runs a fresh engine until it stops, can be called again after a failure
+	 */
 	public void run() {
     	
 		Logger.info("[instance] loading engine " + cfg.getName());
-		MagicHotDeployerEngine engine = new MagicHotDeployerEngine(cfg);
+		MagicHotDeployerEngine engine = new MagicHotDeployerEngine(cfg, watchService);
 		
 		Logger.info("[instance] starting engine " + cfg.getName());
 		
@@ -27,5 +32,13 @@ public class RunnableEngineInstance extends Thread {
 		
 		Logger.info("[instance] engine stopped " + cfg.getName());
     }  
+	
+	public String getName() {
+		return cfg.getName();
+	}
+	
+	public ConfigurationProvider getCfg() {
+		return cfg;
+	}
  
 }
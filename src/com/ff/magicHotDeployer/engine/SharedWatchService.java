@@ -0,0 +1,389 @@
+package com.ff.magicHotDeployer.engine;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * a single watch service shared by every instance.
+ *
+ * each folder is registered once, no matter how many instances cover it, and every event
+ * is routed to all the subscriptions whose root covers the folder it happened in.
+ * trees are registered in parallel on the fork/join common pool, skipping excluded sub folders;
+ * a deleted folder has its keys cancelled along with those of its sub folders (see WatchRegistry).
+ */
+public class SharedWatchService implements WatchBackend {
+
+	private WatchService watcher;
+	private WatchRegistry registry = new WatchRegistry();
+	private List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	private Thread thread = null;
+	
+	public SharedWatchService() throws IOException {
+		this.watcher = FileSystems.getDefault().newWatchService();
+	}
+	
+	/**
+	 * registers root (and its whole tree if recursive, minus the excluded folders)
+	 * and starts routing its events to subscriber
+	 */
+	@Override
+	public RegistrationStats subscribe(WatchSubscriber subscriber, Path root, Boolean recursive, FolderExclusions exclusions) throws IOException {
+		Subscription subscription = new Subscription(subscriber, root.toAbsolutePath(), recursive, exclusions);
+		RegistrationStats stats;
+		
+		if (recursive) {
+			stats = registerAllFolders(subscription, subscription.root);
+		}
+		else {
+			stats = new RegistrationStats();
+			stats.count(registerFolder(subscription.root));
+			stats.stop();
+		}
+		subscriptions.add(subscription);
+		
+		start();
+		return stats;
+	}
+	
+	/**
+	 * registers whatever is missing under folder for a recursive subscriber,
+	 * e.g. folders created while events were being lost
+	 */
+	@Override
+	public RegistrationStats refresh(WatchSubscriber subscriber, Path folder) throws IOException {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.subscriber == subscriber && subscription.recursive && subscription.covers(folder)) {
+				return registerAllFolders(subscription, folder);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * stops routing events to subscriber, and cancels the keys of the folders no other subscription covers
+	 */
+	@Override
+	public void unsubscribe(WatchSubscriber subscriber) {
+		List<Subscription> removed = new ArrayList<Subscription>();
+		for (Subscription subscription : subscriptions) {
+			if (subscription.subscriber == subscriber) {
+				subscriptions.remove(subscription);
+				removed.add(subscription);
+			}
+		}
+		
+		Integer cancelled = 0;
+		for (Subscription subscription : removed) {
+			List<Path> folders = subscription.recursive
+				? registry.foldersUnder(subscription.root)
+				: Collections.singletonList(subscription.root);
+			for (Path folder : folders) {
+				if (!isCovered(folder) && registry.cancel(folder)) {
+					cancelled ++;
+				}
+			}
+		}
+		if (cancelled > 0) {
+			Logger.debugf("{} watch keys cancelled on unsubscribe, {} folders still watched", cancelled, registry.size());
+		}
+	}
+	
+	public Integer getRegisteredFolders() {
+		return registry.size();
+	}
+	
+	public WatchRegistry.Footprint getFootprint() {
+		return registry.getFootprint();
+	}
+	
+	@Override
+	public String describe() {
+		return "watch registry : " + registry.getFootprint();
+	}
+	
+	private synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watchLoop();
+			}
+		}, "mhd-watcher");
+		thread.start();
+	}
+	
+	private Boolean registerFolder(Path folder) throws IOException {
+		if (registry.isRegistered(folder)) {
+			return false;
+		}
+		// registering twice the same folder just returns the same key
+		WatchKey key = folder.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+		if (!registry.register(folder, key)) {
+			return false;
+		}
+		Logger.tracef("folder registered to watchService: {}", folder);
+		return true;
+	}
+	
+	private RegistrationStats registerAllFolders(Subscription subscription, Path start) throws IOException {
+		RegistrationStats stats = new RegistrationStats();
+		
+		// the start folder is registered right away, so that failures reach the caller
+		stats.count(registerFolder(start));
+		ForkJoinPool.commonPool().invoke(new RegisterChildrenTask(subscription, start, stats));
+		
+		stats.stop();
+		return stats;
+	}
+	
+	private Boolean isCovered(Path folder) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.covers(folder)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * subscriptions rooted in a folder that is gone will not receive anything else
+	 */
+	private void closeSubscriptionsUnder(Path folder) {
+		for (Subscription subscription : subscriptions) {
+			if (subscription.root.startsWith(folder)) {
+				subscriptions.remove(subscription);
+				subscription.subscriber.onClosed();
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+    static <T> WatchEvent<T> cast(WatchEvent<?> event) {
+        return (WatchEvent<T>)event;
+    }
+	
+	private void watchLoop() {
+		while (true) {
+			WatchKey key;
+		    try {
+		        key = watcher.take();
+		    } catch (InterruptedException | ClosedWatchServiceException x) {
+		        Logger.debug("shared watch loop stopped");
+		        return;
+		    }
+		    
+		    Path dir = registry.folderOf(key);
+            if (dir == null) {
+            	if (key.isValid()) {
+            		Logger.error("watchkey not recognized " + key.toString());
+            	}
+            	// else cancelled along with a deleted parent, its last events are not needed
+                continue;
+            }
+            
+            for (WatchEvent<?> event : key.pollEvents()) {
+            	dispatch(dir, event);
+            }
+            
+            // reset key and remove from set if directory no longer accessible
+            if (!key.reset()) {
+            	registry.cancelSubtree(dir);
+            	closeSubscriptionsUnder(dir);
+            }
+		}
+	}
+	
+	private void dispatch(Path dir, WatchEvent<?> event) {
+		WatchEvent.Kind<?> kind = event.kind();
+		
+		if (kind == OVERFLOW) {
+			for (Subscription subscription : subscriptions) {
+				if (subscription.covers(dir)) {
+					subscription.subscriber.onOverflow(dir);
+				}
+			}
+			return;
+		}
+		
+		// The filename is the context of the event.
+        WatchEvent<Path> ev = cast(event);
+        Path filePath;
+        try {
+        	filePath = dir.resolve(ev.context());
+        } catch (Exception e) {
+            Logger.error("error resolving changed file " + ev.context(), e);
+            return;
+        }
+        
+        if (kind == ENTRY_DELETE) {
+        	// a watched folder: its sub folders are gone too
+        	Integer cancelled = registry.cancelSubtree(filePath);
+        	if (cancelled > 0) {
+        		Logger.tracef("deleted folder {} : {} watch keys cancelled", filePath, cancelled);
+        		closeSubscriptionsUnder(filePath);
+        	}
+        }
+        
+        // register new sub folders before anyone starts copying them, so that nothing created inside is missed
+        if (kind == ENTRY_CREATE && Files.isDirectory(filePath, NOFOLLOW_LINKS)) {
+        	for (Subscription subscription : subscriptions) {
+        		if (subscription.recursive && subscription.covers(filePath)) {
+        			try {
+        				registerAllFolders(subscription, filePath);
+        			} catch (IOException x) {
+        				Logger.error("a folder has been created but recursive registering failed: " + filePath.toString());
+        			}
+        		}
+        	}
+        }
+        
+        for (Subscription subscription : subscriptions) {
+        	if (subscription.covers(dir) && !subscription.isExcluded(filePath)) {
+        		subscription.subscriber.onEvent(filePath, kind);
+        	}
+        }
+	}
+	
+	private static class Subscription {
+		private WatchSubscriber subscriber;
+		private Path root;
+		private Boolean recursive;
+		private FolderExclusions exclusions;
+		
+		private Subscription(WatchSubscriber subscriber, Path root, Boolean recursive, FolderExclusions exclusions) {
+			this.subscriber = subscriber;
+			this.root = root;
+			this.recursive = recursive;
+			this.exclusions = (exclusions != null ? exclusions : new FolderExclusions(null));
+		}
+		
+		private Boolean covers(Path dir) {
+			if (recursive) {
+				return dir.startsWith(root) && !isExcluded(dir);
+			}
+			return dir.equals(root);
+		}
+		
+		private Boolean isExcluded(Path path) {
+			if (!recursive || exclusions.isEmpty()) {
+				return false;
+			}
+			return exclusions.isExcludedAnywhere(root.relativize(path));
+		}
+	}
+	
+	/**
+	 * registers the sub folders of a folder, forking a task for each one of them
+	 */
+	private class RegisterChildrenTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private Subscription subscription;
+		private Path folder;
+		private RegistrationStats stats;
+		
+		private RegisterChildrenTask(Subscription subscription, Path folder, RegistrationStats stats) {
+			this.subscription = subscription;
+			this.folder = folder;
+			this.stats = stats;
+		}
+		
+		@Override
+		protected void compute() {
+			List<RegisterChildrenTask> children = new ArrayList<RegisterChildrenTask>();
+			
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+				for (Path child : entries) {
+					if (!Files.isDirectory(child, NOFOLLOW_LINKS)) {
+						continue;
+					}
+					if (subscription.exclusions.isExcluded(subscription.root.relativize(child))) {
+						Logger.tracef("excluded folder not watched: {}", child);
+						stats.skipped.incrementAndGet();
+						continue;
+					}
+					stats.count(registerFolder(child));
+					children.add(new RegisterChildrenTask(subscription, child, stats));
+				}
+			}
+			catch (IOException e) {
+				// folder removed while walking or not readable
+				Logger.warn("cannot register sub folders of " + folder + " : " + e.getMessage());
+				stats.failed.incrementAndGet();
+			}
+			
+			invokeAll(children);
+		}
+	}
+	
+	public static class RegistrationStats {
+		
+		private AtomicLong registered = new AtomicLong();
+		private AtomicLong alreadyWatched = new AtomicLong();
+		private AtomicLong skipped = new AtomicLong();
+		private AtomicLong failed = new AtomicLong();
+		private long started = System.nanoTime();
+		private long elapsed = 0L;
+		
+		void count(Boolean newlyRegistered) {
+			if (newlyRegistered) {
+				registered.incrementAndGet();
+			}
+			else {
+				alreadyWatched.incrementAndGet();
+			}
+		}
+		
+		void stop() {
+			elapsed = System.nanoTime() - started;
+		}
+		
+		public Long getRegistered() {
+			return registered.get();
+		}
+		public Long getAlreadyWatched() {
+			return alreadyWatched.get();
+		}
+		public Long getSkipped() {
+			return skipped.get();
+		}
+		public Long getFailed() {
+			return failed.get();
+		}
+		public Long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(elapsed);
+		}
+		
+		@Override
+		public String toString() {
+			return registered + " folders registered (" + alreadyWatched + " already watched), " + 
+				skipped + " excluded, " + failed + " failed, in " + getElapsedMillis() + " ms";
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.configuration.SourceMapping;
+
+/**
+ * routes source files to their target in the deployed package, for instances with several source folders.
+ *
+ * source roots are stored in a trie of path segments built once at startup. a lookup walks the segments
+ * of the path string in place (compared with regionMatches, no substrings) and returns the deepest root
+ * the path belongs to, so routing an event does not allocate; the target path is then built from the
+ * part of the string following the root.
+ */
+public class SourceRouter {
+
+	// windows paths are case insensitive and accept both separators
+	private static final Boolean IGNORE_CASE = (File.separatorChar == '\\');
+
+	private Node trie = new Node();
+	private List<Route> routes = new ArrayList<Route>();
+
+	public SourceRouter(ConfigurationProvider cfg) {
+		for (SourceMapping mapping : cfg.getMappings()) {
+			add(Paths.get(URI.create("file:///" + mapping.getSource())), mapping.getDestSub());
+		}
+	}
+
+	private void add(Path source, String destSub) {
+		Route route = new Route(source.toAbsolutePath().normalize(), destSub);
+
+		Node node = trie;
+		String path = route.source.toString();
+		int start = 0;
+		while ((start = nextSegmentStart(path, start)) < path.length()) {
+			int end = segmentEnd(path, start);
+			Node child = node.child(path, start, end);
+			if (child == null) {
+				child = node.addChild(path.substring(start, end));
+			}
+			node = child;
+			start = end;
+		}
+
+		if (node.route != null) {
+			throw new RuntimeException("source folder mapped twice : " + route.source);
+		}
+		node.route = route;
+		routes.add(route);
+	}
+
+	/**
+	 * @return the deepest route whose source folder holds path (or is path), null if none does
+	 */
+	public Route route(Path path) {
+		String value = path.toString();
+		Node node = trie;
+		Route found = node.route;
+
+		int start = 0;
+		while ((start = nextSegmentStart(value, start)) < value.length()) {
+			int end = segmentEnd(value, start);
+			node = node.child(value, start, end);
+			if (node == null) {
+				break;
+			}
+			if (node.route != null) {
+				found = node.route;
+			}
+			start = end;
+		}
+		return found;
+	}
+
+	public List<Route> getRoutes() {
+		return Collections.unmodifiableList(routes);
+	}
+
+	public Route getPrimaryRoute() {
+		return routes.isEmpty() ? null : routes.get(0);
+	}
+
+	/**
+	 * @return the first source folder holding another one, if any
+	 */
+	public Route findNested() {
+		for (Route outer : routes) {
+			for (Route inner : routes) {
+				if (inner != outer && inner.source.startsWith(outer.source)) {
+					return inner;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Boolean isSeparator(char c) {
+		return c == '/' || c == File.separatorChar;
+	}
+
+	private static int nextSegmentStart(String path, int from) {
+		while (from < path.length() && isSeparator(path.charAt(from))) {
+			from ++;
+		}
+		return from;
+	}
+
+	private static int segmentEnd(String path, int start) {
+		int end = start;
+		while (end < path.length() && !isSeparator(path.charAt(end))) {
+			end ++;
+		}
+		return end;
+	}
+
+	private static class Node {
+		private String[] segments = new String[0];
+		private Node[] children = new Node[0];
+		private Route route = null;
+
+		private Node child(String path, int start, int end) {
+			int length = end - start;
+			for (int i = 0; i < segments.length; i ++) {
+				String segment = segments[i];
+				if (segment.length() == length && path.regionMatches(IGNORE_CASE, start, segment, 0, length)) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node addChild(String segment) {
+			Node child = new Node();
+			segments = Arrays.copyOf(segments, segments.length + 1);
+			children = Arrays.copyOf(children, children.length + 1);
+			segments[segments.length - 1] = segment;
+			children[children.length - 1] = child;
+			return child;
+		}
+	}
+
+	/**
+	 * a source folder and where it goes inside the deployed package
+	 */
+	public static class Route {
+
+		private Path source;
+		private String destSub;
+		private int prefixLength;
+		private volatile TargetBase targetBase = null;
+
+		public Route(Path source, String destSub) {
+			this.source = source;
+			this.destSub = (destSub != null ? destSub : "");
+			this.prefixLength = source.toString().length();
+		}
+
+		public Path getSource() {
+			return source;
+		}
+
+		public String getDestSub() {
+			return destSub;
+		}
+
+		/**
+		 * the folder source is reflected into, for the given deployed package.
+		 * computed again only when the deployment path changes
+		 */
+		public Path getTargetBase(Path deployment) {
+			TargetBase current = targetBase;
+			if (current == null || !current.deployment.equals(deployment)) {
+				current = new TargetBase(deployment, JbossDeployer.resolveTargetBase(deployment, destSub));
+				targetBase = current;
+			}
+			return current.base;
+		}
+
+		/**
+		 * @param path a path routed to this route
+		 */
+		public Path toTarget(Path path, Path deployment) {
+			Path base = getTargetBase(deployment);
+			String value = path.toString();
+			int start = nextSegmentStart(value, prefixLength);
+			if (start >= value.length()) {
+				return base;
+			}
+			return base.resolve(value.substring(start));
+		}
+
+		@Override
+		public String toString() {
+			return source + " " + SourceMapping.SEPARATOR + " " + ("".equals(destSub) ? "/" : destSub);
+		}
+	}
+
+	private static class TargetBase {
+		private Path deployment;
+		private Path base;
+
+		private TargetBase(Path deployment, Path base) {
+			this.deployment = deployment;
+			this.base = base;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tells an event storm (git checkout, mvn clean, workspace refresh...) from normal editing.
+ *
+ * a storm starts when events come in faster than the configured rate or pile up beyond the
+ * configured queue depth. during a storm single events are not applied: the folders they happened
+ * in are marked dirty instead, and once no event has arrived for the quiet period the dirty folders
+ * are synchronized as a whole, so the work depends on what differs at the end and not on how many
+ * events the storm produced. dirty folders are bounded: past the limit they are dropped in favour
+ * of synchronizing every source folder.
+ *
+ * not thread safe: it's meant to be used by the watch loop only.
+ */
+public class StormDetector {
+
+	private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private Integer rate;
+	private Integer queueDepth;
+	private long quietNanos;
+	private Integer maxFolders;
+
+	private long windowStart = 0L;
+	private Integer windowEvents = 0;
+	private long lastEvent = 0L;
+
+	private Boolean inStorm = false;
+	private long stormStart = 0L;
+	private long stormEvents = 0L;
+	// dirty folder -> whether its sub folders are dirty too
+	private Map<Path, Boolean> dirty = new HashMap<Path, Boolean>();
+	private Boolean overflowed = false;
+
+	private long storms = 0L;
+	private long dropped = 0L;
+
+	/**
+	 * @param rate events per second starting a storm, 0 = not checked
+	 * @param queueDepth events waiting starting a storm, 0 = not checked
+	 * @param quietMillis time without events ending a storm
+	 * @param maxFolders dirty folders kept before falling back to synchronizing everything
+	 */
+	public StormDetector(Integer rate, Integer queueDepth, long quietMillis, Integer maxFolders) {
+		this.rate = rate;
+		this.queueDepth = queueDepth;
+		this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+		this.maxFolders = maxFolders;
+	}
+
+	/**
+	 * counts an event
+	 *
+	 * @param waiting events waiting to be handled
+	 * @return true if the instance is in a storm, and the event is not to be applied on its own
+	 */
+	public Boolean record(Integer waiting) {
+		long now = System.nanoTime();
+		lastEvent = now;
+
+		if (now - windowStart > RATE_WINDOW_NANOS) {
+			windowStart = now;
+			windowEvents = 0;
+		}
+		windowEvents ++;
+
+		if (!inStorm && ((rate > 0 && windowEvents > rate) || (queueDepth > 0 && waiting > queueDepth))) {
+			inStorm = true;
+			stormStart = now;
+			stormEvents = 0L;
+			storms ++;
+		}
+		if (inStorm) {
+			stormEvents ++;
+			dropped ++;
+		}
+		return inStorm;
+	}
+
+	public Boolean isInStorm() {
+		return inStorm;
+	}
+
+	/**
+	 * @param recursive true if the sub folders are to be synchronized as well
+	 */
+	public void markDirty(Path folder, Boolean recursive) {
+		if (overflowed) {
+			return;
+		}
+		Boolean current = dirty.get(folder);
+		if (current == null || (!current && recursive)) {
+			dirty.put(folder, recursive);
+		}
+		if (dirty.size() > maxFolders) {
+			overflowed = true;
+			dirty.clear();
+		}
+	}
+
+	/**
+	 * @return ms until the storm is over if no other event arrives, EventCoalescer.NO_DEADLINE if not in a storm
+	 */
+	public long getMillisToSettle() {
+		if (!inStorm) {
+			return EventCoalescer.NO_DEADLINE;
+		}
+		long remaining = quietNanos - (System.nanoTime() - lastEvent);
+		if (remaining <= 0) return 0;
+		return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining));
+	}
+
+	public Boolean isSettled() {
+		return inStorm && getMillisToSettle() <= 0;
+	}
+
+	/**
+	 * ends the storm
+	 *
+	 * @return what needs to be synchronized, folders covered by a recursive parent left out
+	 */
+	public Storm end() {
+		Storm storm = new Storm();
+		storm.events = stormEvents;
+		storm.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stormStart);
+		storm.everything = overflowed;
+
+		if (!overflowed) {
+			for (Map.Entry<Path, Boolean> entry : dirty.entrySet()) {
+				if (!isCovered(entry.getKey())) {
+					storm.folders.add(entry.getKey());
+					storm.recursive.add(entry.getValue());
+				}
+			}
+		}
+
+		inStorm = false;
+		overflowed = false;
+		dirty = new HashMap<Path, Boolean>();
+		return storm;
+	}
+
+	private Boolean isCovered(Path folder) {
+		for (Path parent = folder.getParent(); parent != null; parent = parent.getParent()) {
+			if (Boolean.TRUE.equals(dirty.get(parent))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public long getStorms() {
+		return storms;
+	}
+
+	/**
+	 * events not applied on their own because of a storm
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * what a storm left to synchronize
+	 */
+	public static class Storm {
+
+		private List<Path> folders = new ArrayList<Path>();
+		private List<Boolean> recursive = new ArrayList<Boolean>();
+		private Boolean everything = false;
+		private long events = 0L;
+		private long elapsedMillis = 0L;
+
+		public List<Path> getFolders() {
+			return folders;
+		}
+
+		public Boolean isRecursive(Integer index) {
+			return recursive.get(index);
+		}
+
+		/**
+		 * true if too many folders were dirty, and every source folder is to be synchronized
+		 */
+		public Boolean isEverything() {
+			return everything;
+		}
+
+		public long getEvents() {
+			return events;
+		}
+
+		@Override
+		public String toString() {
+			return events + " events in " + elapsedMillis + " ms, " +
+				(everything ? "too many folders changed, synchronizing everything" : folders.size() + " folders to synchronize");
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * removes deployed folders without holding up the events that follow.
+ *
+ * a folder is renamed into a per-instance trash folder on the same file system, so it disappears
+ * from the deployment at once, then deleted by a low priority background thread.
+ * whatever is found in a trash folder the first time it is used comes from a previous run
+ * that stopped before deleting it, and is deleted as well.
+ */
+public class TrashBin {
+
+	public static final String TRASH_PREFIX = ".mhd-trash-";
+
+	private String name;
+	private String instanceName;
+	private ExecutorService executor;
+	private Set<Path> opened = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+	private AtomicLong counter = new AtomicLong();
+	private AtomicInteger pending = new AtomicInteger();
+
+	public TrashBin(String name) {
+		this.name = name;
+		this.instanceName = "[ " + name + " ] ";
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "mhd-" + TrashBin.this.name + "-trash");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * the configured trash folder, else one in the jboss temp folder next to where packages are exploded
+	 * (tmp/vfs, or tmp in jboss4 mode), else with a fixed target one next to the deployment
+	 *
+	 * @param deployment needed only with a fixed target, may be null otherwise
+	 * @return the trash folder for the given deployment, null if there is no place for one
+	 */
+	public Path folderFor(ConfigurationProvider cfg, Path deployment) {
+		if (cfg.getTrashFolder() != null) {
+			return new File(cfg.getTrashFolder()).toPath().toAbsolutePath().normalize();
+		}
+		String folder = TRASH_PREFIX + name.replaceAll("[^A-Za-z0-9._-]", "_");
+		
+		// on the same file system so that renaming is cheap, but outside of the folders searched
+		// and watched for the deployment (see DeploymentPathResolver)
+		if (cfg.getFixedTarget() == null && cfg.getJbossHome() != null) {
+			return Paths.get(cfg.getJbossHome(), cfg.isJboss4() ? "tmp" : "tmp/vfs", folder).toAbsolutePath().normalize();
+		}
+		Path parent = (deployment != null ? deployment.toAbsolutePath().getParent() : null);
+		return parent == null ? null : parent.resolve(folder);
+	}
+
+	/**
+	 * moves target into the trash folder and schedules its deletion
+	 *
+	 * @return false if target could not be moved (e.g. trash on another file system): the caller deletes it in place
+	 */
+	public Boolean discard(File target, Path trash) {
+		try {
+			open(trash);
+			Path moved = trash.resolve(target.getName() + "." + System.currentTimeMillis() + "-" + counter.incrementAndGet());
+			Files.move(target.toPath(), moved, StandardCopyOption.ATOMIC_MOVE);
+			Logger.tracef("moved {} to trash as {}", target, moved);
+			schedule(moved);
+			return true;
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Logger.debug(this.instanceName + "cannot move " + target + " to trash " + trash + " (different file system ?), deleting in place");
+			return false;
+		}
+		catch (IOException e) {
+			Logger.debug(this.instanceName + "cannot move " + target + " to trash " + trash + " : " + e.getMessage() + ", deleting in place");
+			return false;
+		}
+	}
+
+	/**
+	 * creates the trash folder if needed; the first time, schedules the deletion of what is left in it
+	 */
+	public void open(Path trash) throws IOException {
+		if (!opened.add(trash)) {
+			return;
+		}
+		Files.createDirectories(trash);
+
+		Integer leftovers = 0;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(trash)) {
+			for (Path entry : entries) {
+				schedule(entry);
+				leftovers ++;
+			}
+		}
+		if (leftovers > 0) {
+			Logger.info(this.instanceName + "deleting " + leftovers + " leftovers from previous runs in " + trash);
+		}
+	}
+
+	private void schedule(final Path entry) {
+		pending.incrementAndGet();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						FileUtils.forceDelete(entry.toFile());
+						Logger.tracef("deleted {} from trash", entry);
+					}
+					catch (IOException e) {
+						// left in place, next run will try again
+						Logger.warn(instanceName + "cannot delete " + entry + " from trash : " + e.getMessage());
+					}
+					finally {
+						pending.decrementAndGet();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			// shutting down, next run will clean it up
+			pending.decrementAndGet();
+		}
+	}
+
+	/**
+	 * entries moved to trash and not deleted yet
+	 */
+	public Integer getPending() {
+		return pending.get();
+	}
+
+	/**
+	 * deletions already scheduled go on in background, what the process does not get to is cleaned up at next start
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
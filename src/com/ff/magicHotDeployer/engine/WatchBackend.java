@@ -0,0 +1,30 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * where file system events come from: the native watch service shared by every instance (SharedWatchService),
+ * or a polling scan for file systems whose events are lost or late (PollingWatchService)
+ */
+public interface WatchBackend {
+
+	/**
+	 * starts delivering the events of root (and of its whole tree if recursive, minus the excluded folders) to subscriber
+	 */
+	public SharedWatchService.RegistrationStats subscribe(WatchSubscriber subscriber, Path root, Boolean recursive, FolderExclusions exclusions) throws IOException;
+
+	/**
+	 * makes sure folders under folder are followed, e.g. after events were lost
+	 *
+	 * @return null if subscriber does not cover folder
+	 */
+	public SharedWatchService.RegistrationStats refresh(WatchSubscriber subscriber, Path folder) throws IOException;
+
+	public void unsubscribe(WatchSubscriber subscriber);
+
+	/**
+	 * short report of what is being watched, for the logs
+	 */
+	public String describe();
+}
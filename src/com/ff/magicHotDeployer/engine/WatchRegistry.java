@@ -0,0 +1,377 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * watched folders and their watch keys, stored as a trie of path segments.
+ *
+ * every folder is a node holding its own name only, names being interned so that the many folders
+ * called main, java, com, resources... share a single string. keys map to nodes for dispatching
+ * events, and each node holds its key, so that a deleted folder can be cancelled with all of its
+ * sub folders at once. paths are rebuilt from the nodes when needed.
+ *
+ * thread safe: registrations come from the fork/join pool, lookups from the watch loop.
+ */
+public class WatchRegistry {
+
+	// beyond this many sub folders children are looked up by hash instead of scanning them (a power of two)
+	private static final int MAX_SCANNED_CHILDREN = 8;
+
+	// rough sizes for a 64 bit jvm with compressed oops, for the footprint report
+	private static final long NODE_BYTES = 32;
+	private static final long ARRAY_BYTES = 16;
+	private static final long REFERENCE_BYTES = 4;
+	private static final long MAP_ENTRY_BYTES = 40;
+	private static final long STRING_BYTES = 40;
+
+	private Node roots = new Node(null, null);
+	private Map<String, String> names = new HashMap<String, String>();
+	// watch keys don't override equals, an identity map holds them in a flat table
+	private Map<WatchKey, Node> keys = new IdentityHashMap<WatchKey, Node>();
+
+	/**
+	 * @return false if folder already had a key
+	 */
+	public synchronized Boolean register(Path folder, WatchKey key) {
+		Node node = nodeOf(folder, true);
+		if (node.key != null) {
+			return false;
+		}
+		node.key = key;
+		keys.put(key, node);
+		return true;
+	}
+
+	public synchronized Boolean isRegistered(Path folder) {
+		Node node = nodeOf(folder, false);
+		return node != null && node.key != null;
+	}
+
+	/**
+	 * @return the folder watched by key, null if unknown (e.g. already cancelled)
+	 */
+	public synchronized Path folderOf(WatchKey key) {
+		Node node = keys.get(key);
+		return node == null ? null : node.toPath();
+	}
+
+	/**
+	 * forgets the folder watched by key, leaving its sub folders alone
+	 */
+	public synchronized void forget(WatchKey key) {
+		Node node = keys.remove(key);
+		if (node != null) {
+			node.key = null;
+			prune(node);
+		}
+	}
+
+	/**
+	 * cancels the keys of folder and of everything under it
+	 *
+	 * @return cancelled keys, 0 if folder was not watched
+	 */
+	public synchronized Integer cancelSubtree(Path folder) {
+		Node node = nodeOf(folder, false);
+		if (node == null) {
+			return 0;
+		}
+		List<Node> subtree = new ArrayList<Node>();
+		node.collect(subtree);
+
+		Integer cancelled = 0;
+		for (Node n : subtree) {
+			if (n.key != null) {
+				n.key.cancel();
+				keys.remove(n.key);
+				n.key = null;
+				cancelled ++;
+			}
+		}
+		node.parent.removeChild(node);
+		prune(node.parent);
+		return cancelled;
+	}
+
+	/**
+	 * cancels the key of folder alone, its sub folders keep theirs
+	 *
+	 * @return false if folder was not watched
+	 */
+	public synchronized Boolean cancel(Path folder) {
+		Node node = nodeOf(folder, false);
+		if (node == null || node.key == null) {
+			return false;
+		}
+		node.key.cancel();
+		keys.remove(node.key);
+		node.key = null;
+		prune(node);
+		return true;
+	}
+
+	/**
+	 * @return folder and the folders under it that have a key
+	 */
+	public synchronized List<Path> foldersUnder(Path folder) {
+		List<Path> folders = new ArrayList<Path>();
+		Node node = nodeOf(folder, false);
+		if (node == null) {
+			return folders;
+		}
+		List<Node> subtree = new ArrayList<Node>();
+		node.collect(subtree);
+		for (Node n : subtree) {
+			if (n.key != null) {
+				folders.add(n.toPath());
+			}
+		}
+		return folders;
+	}
+
+	public synchronized Integer size() {
+		return keys.size();
+	}
+
+	public synchronized Footprint getFootprint() {
+		Footprint footprint = new Footprint();
+		footprint.folders = keys.size();
+		footprint.names = names.size();
+		List<Node> all = new ArrayList<Node>();
+		roots.collect(all);
+		// the top node is just a holder for the file system roots
+		all.remove(0);
+		for (Node n : all) {
+			footprint.nodes ++;
+			footprint.bytes += NODE_BYTES;
+			if (n.children != null) {
+				footprint.bytes += ARRAY_BYTES + REFERENCE_BYTES * n.children.length;
+			}
+		}
+		for (String name : names.keySet()) {
+			footprint.bytes += STRING_BYTES + name.length() + MAP_ENTRY_BYTES;
+		}
+		// identity map: key and value side by side, table up to 3 times the size
+		footprint.bytes += ARRAY_BYTES + REFERENCE_BYTES * 2 * 3 * keys.size() / 2;
+		return footprint;
+	}
+
+	private Node nodeOf(Path folder, Boolean create) {
+		Path root = folder.getRoot();
+		Node node = roots;
+		if (root != null) {
+			node = step(node, root.toString(), create);
+		}
+		for (int i = 0; node != null && i < folder.getNameCount(); i ++) {
+			node = step(node, folder.getName(i).toString(), create);
+		}
+		return node;
+	}
+
+	private Node step(Node node, String name, Boolean create) {
+		Node child = node.child(name);
+		if (child == null && create) {
+			child = node.addChild(intern(name));
+		}
+		return child;
+	}
+
+	private String intern(String name) {
+		String interned = names.get(name);
+		if (interned == null) {
+			names.put(name, name);
+			interned = name;
+		}
+		return interned;
+	}
+
+	/**
+	 * drops nodes left with no key and no children, up to the first one still needed
+	 */
+	private void prune(Node node) {
+		while (node != roots && node.key == null && node.isLeaf()) {
+			node.parent.removeChild(node);
+			node = node.parent;
+		}
+	}
+
+	private static class Node {
+		private String name;
+		private Node parent;
+		private WatchKey key = null;
+		// up to MAX_SCANNED_CHILDREN packed at the start, beyond that an open addressing table
+		private Node[] children = null;
+		private int childCount = 0;
+
+		private Node(String name, Node parent) {
+			this.name = name;
+			this.parent = parent;
+		}
+
+		private Boolean isHashed() {
+			return children.length > MAX_SCANNED_CHILDREN;
+		}
+
+		private Node child(String name) {
+			if (children == null) {
+				return null;
+			}
+			if (!isHashed()) {
+				for (int i = 0; i < childCount; i ++) {
+					if (children[i].name.equals(name)) {
+						return children[i];
+					}
+				}
+				return null;
+			}
+			int mask = children.length - 1;
+			for (int i = slotOf(name, mask); children[i] != null; i = (i + 1) & mask) {
+				if (children[i].name.equals(name)) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node addChild(String name) {
+			Node child = new Node(name, this);
+			if (children == null) {
+				children = new Node[2];
+			}
+			if (!isHashed() && childCount < children.length) {
+				children[childCount] = child;
+			}
+			else if (!isHashed() && childCount * 2 <= MAX_SCANNED_CHILDREN) {
+				children = Arrays.copyOf(children, childCount * 2);
+				children[childCount] = child;
+			}
+			else {
+				// kept at most half full
+				if ((childCount + 1) * 2 > children.length || !isHashed()) {
+					rehash(Integer.highestOneBit(Math.max(childCount * 4, MAX_SCANNED_CHILDREN * 4)));
+				}
+				insert(child);
+			}
+			childCount ++;
+			return child;
+		}
+
+		private void removeChild(Node child) {
+			if (!isHashed()) {
+				for (int i = 0; i < childCount; i ++) {
+					if (children[i] == child) {
+						childCount --;
+						children[i] = children[childCount];
+						children[childCount] = null;
+						return;
+					}
+				}
+				return;
+			}
+			int mask = children.length - 1;
+			int i = slotOf(child.name, mask);
+			while (children[i] != null && children[i] != child) {
+				i = (i + 1) & mask;
+			}
+			if (children[i] == null) {
+				return;
+			}
+			children[i] = null;
+			childCount --;
+			// entries following in the same run may have been displaced by the removed one
+			for (i = (i + 1) & mask; children[i] != null; i = (i + 1) & mask) {
+				Node moved = children[i];
+				children[i] = null;
+				insert(moved);
+			}
+		}
+
+		private void rehash(int length) {
+			Node[] old = children;
+			children = new Node[length];
+			for (Node n : old) {
+				if (n != null) {
+					insert(n);
+				}
+			}
+		}
+
+		private void insert(Node child) {
+			int mask = children.length - 1;
+			int i = slotOf(child.name, mask);
+			while (children[i] != null) {
+				i = (i + 1) & mask;
+			}
+			children[i] = child;
+		}
+
+		private static int slotOf(String name, int mask) {
+			int h = name.hashCode();
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		private Boolean isLeaf() {
+			return childCount == 0;
+		}
+
+		private void collect(List<Node> out) {
+			out.add(this);
+			if (children != null) {
+				for (Node child : children) {
+					if (child != null) {
+						child.collect(out);
+					}
+				}
+			}
+		}
+
+		private Path toPath() {
+			int depth = 0;
+			for (Node n = this; n.parent != null; n = n.parent) {
+				depth ++;
+			}
+			String[] segments = new String[depth];
+			for (Node n = this; n.parent != null; n = n.parent) {
+				segments[-- depth] = n.name;
+			}
+			// the first segment is the file system root
+			return Paths.get(segments[0], Arrays.copyOfRange(segments, 1, segments.length));
+		}
+	}
+
+	public static class Footprint {
+		private Integer folders = 0;
+		private Integer nodes = 0;
+		private Integer names = 0;
+		private Long bytes = 0L;
+
+		public Integer getFolders() {
+			return folders;
+		}
+		public Integer getNodes() {
+			return nodes;
+		}
+		public Integer getNames() {
+			return names;
+		}
+		/**
+		 * estimated heap used by the registry, watch keys excluded
+		 */
+		public Long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return folders + " folders in " + nodes + " nodes, " + names + " distinct names, about " + (bytes / 1024) + " KB";
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.ff.magicHotDeployer.engine;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * receives the events routed by a SharedWatchService.
+ * callbacks run on the watcher thread and should return quickly
+ */
+public interface WatchSubscriber {
+
+	public void onEvent(Path path, WatchEvent.Kind<?> kind);
+	
+	/**
+	 * events for this folder have been lost
+	 */
+	public void onOverflow(Path folder);
+	
+	/**
+	 * the watched root is no longer accessible
+	 */
+	public void onClosed();
+}
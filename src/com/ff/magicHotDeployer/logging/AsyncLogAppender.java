@@ -0,0 +1,166 @@
+package com.ff.magicHotDeployer.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * publishes log entries into a bounded lock-free ring buffer drained by a single background printer thread,
+ * so that callers never wait on console I/O.
+ *
+ * producers claim a sequence with a CAS and mark their slot as published, the printer consumes slots
+ * strictly in sequence order. when the buffer is full entries are either dropped (and counted)
+ * or the caller spins until the printer frees a slot.
+ */
+public class AsyncLogAppender {
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	
+	private final int capacity;
+	private final int mask;
+	private final LogEntry[] slots;
+	private final AtomicLongArray published;
+	private final AtomicLong claimed = new AtomicLong(0L);
+	private final AtomicLong dropped = new AtomicLong(0L);
+	private final Boolean dropWhenFull;
+	
+	private volatile long consumed = 0L;
+	private volatile boolean waiting = false;
+	private volatile boolean running = true;
+	private Thread printer;
+	
+	public AsyncLogAppender(Integer bufferSize, Boolean dropWhenFull) {
+		// round up to a power of two so that slots are addressed with a mask
+		int size = 1;
+		while (size < bufferSize) size <<= 1;
+		
+		this.capacity = size;
+		this.mask = size - 1;
+		this.slots = new LogEntry[size];
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i ++) {
+			published.set(i, -1L);
+		}
+		this.dropWhenFull = dropWhenFull;
+		
+		this.printer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		}, "mhd-log-printer");
+		this.printer.setDaemon(true);
+	}
+	
+	public void start() {
+		printer.start();
+	}
+	
+	/**
+	 * @return false if the entry has been dropped because the buffer is full
+	 */
+	public Boolean publish(LogEntry entry) {
+		long sequence;
+		while (true) {
+			sequence = claimed.get();
+			if (sequence - consumed >= capacity) {
+				if (dropWhenFull || !running) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				wakePrinter();
+				LockSupport.parkNanos(FULL_PARK_NANOS);
+				continue;
+			}
+			if (claimed.compareAndSet(sequence, sequence + 1)) {
+				break;
+			}
+		}
+		
+		int index = (int) (sequence & mask);
+		slots[index] = entry;
+		published.set(index, sequence);
+		
+		if (waiting) {
+			wakePrinter();
+		}
+		return true;
+	}
+	
+	/**
+	 * waits until every entry published so far has been printed
+	 * @return false if timeout elapsed first
+	 */
+	public Boolean flush(long timeoutMillis) {
+		long target = claimed.get();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		
+		while (consumed < target) {
+			if (System.nanoTime() > deadline || !printer.isAlive()) {
+				return false;
+			}
+			wakePrinter();
+			LockSupport.parkNanos(FULL_PARK_NANOS);
+		}
+		return true;
+	}
+	
+	/**
+	 * flushes pending entries and stops the printer thread
+	 */
+	public void shutdown(long timeoutMillis) {
+		flush(timeoutMillis);
+		running = false;
+		wakePrinter();
+	}
+	
+	public Long getDropped() {
+		return dropped.get();
+	}
+	
+	public Long getPending() {
+		return claimed.get() - consumed;
+	}
+	
+	private void wakePrinter() {
+		LockSupport.unpark(printer);
+	}
+	
+	private void drainLoop() {
+		long next = consumed;
+		long reportedDrops = 0L;
+		
+		while (running || published.get((int) (next & mask)) == next) {
+			int index = (int) (next & mask);
+			
+			if (published.get(index) != next) {
+				waiting = true;
+				if (published.get(index) != next && running) {
+					LockSupport.parkNanos(IDLE_PARK_NANOS);
+				}
+				waiting = false;
+				continue;
+			}
+			
+			LogEntry entry = slots[index];
+			slots[index] = null;
+			consumed = ++ next;
+			
+			try {
+				Logger.write(entry);
+			}
+			catch (Throwable e) {
+				// never let a formatting problem kill the printer
+				e.printStackTrace();
+			}
+			
+			long drops = dropped.get();
+			if (drops != reportedDrops && consumed == claimed.get()) {
+				Logger.write(new LogEntry(Logger.LEVEL_WARNING, (drops - reportedDrops) + " log entries dropped (buffer full)"));
+				reportedDrops = drops;
+			}
+		}
+	}
+}
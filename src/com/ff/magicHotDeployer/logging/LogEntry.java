@@ -1,6 +1,5 @@
 package com.ff.magicHotDeployer.logging;
 
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 
@@ -38,7 +37,7 @@ public class LogEntry {
 		this.level = Logger.LEVEL_INFO;
 		this.message = null;
 		this.params = new HashMap<>();
-		this.time = Calendar.getInstance().getTime();
+		this.time = new Date();
 	}
 
 	public Date getTime() {
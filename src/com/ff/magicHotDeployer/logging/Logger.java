@@ -1,6 +1,7 @@
 package com.ff.magicHotDeployer.logging;
 
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import com.diogonunes.jcdp.color.ColoredPrinter;
 import com.diogonunes.jcdp.color.api.Ansi.Attribute;
@@ -22,6 +23,11 @@ public class Logger {
 
 	public static ReentrantLock lock = new ReentrantLock();
 	
+	private static final String PARAM_THROWABLE = "throwable";
+	private static final long ASYNC_SHUTDOWN_FLUSH_TIMEOUT = 2000L;
+	
+	private static volatile AsyncLogAppender asyncAppender = null;
+	
 	public static ColoredPrinter printer = 
 			new ColoredPrinter.Builder(1, false)
             .foreground(FColor.WHITE)
@@ -43,11 +49,33 @@ public class Logger {
 	
 	public static void log(String message, LogLevel level) {
 		if (level.getPriority() >= getFilterLevel().getPriority()) {
+			AsyncLogAppender appender = asyncAppender;
+			if (appender != null) {
+				appender.publish(new LogEntry(level, message));
+			}
+			else {
+				write(new LogEntry(level, message));
+			}
+		}
+	}
+	
+	/**
+	 * prints an entry right away. called by the log methods in synchronous mode
+	 * and by the printer thread in asynchronous mode
+	 */
+	static void write(LogEntry entry) {
+		LogLevel level = entry.getLevel();
+		Throwable throwable = (Throwable) entry.getParams().get(PARAM_THROWABLE);
+		
+		Logger.lock.lock();
+		try {
+			if (throwable != null) {
+				throwable.printStackTrace();
+				return;
+			}
 			
-			String line = message;
+			String line = entry.getMessage();
 			String pre = level.getName();
-		
-			Logger.lock.lock();
 			
 			if (level == LEVEL_DEBUG) {
 				printer.print(
@@ -106,16 +134,56 @@ public class Logger {
 				);	
 			}
 			System.out.println("");
-			
+		}
+		finally {
 			Logger.lock.unlock();
 		}
 	}
+	
+	/**
+	 * switches to asynchronous logging. calling it again has no effect
+	 */
+	public static synchronized void enableAsync(Integer bufferSize, Boolean dropWhenFull) {
+		if (asyncAppender != null) {
+			return;
+		}
+		final AsyncLogAppender appender = new AsyncLogAppender(bufferSize, dropWhenFull);
+		appender.start();
+		asyncAppender = appender;
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				appender.shutdown(ASYNC_SHUTDOWN_FLUSH_TIMEOUT);
+			}
+		}, "mhd-log-flush"));
+	}
+	
+	public static Boolean isAsync() {
+		return asyncAppender != null;
+	}
+	
+	public static void flush() {
+		AsyncLogAppender appender = asyncAppender;
+		if (appender != null) {
+			appender.flush(ASYNC_SHUTDOWN_FLUSH_TIMEOUT);
+		}
+	}
+	
+	private static void printStackTrace(Throwable e) {
+		AsyncLogAppender appender = asyncAppender;
+		if (appender != null) {
+			LogEntry entry = new LogEntry(LEVEL_ERROR, null);
+			entry.getParams().put(PARAM_THROWABLE, e);
+			appender.publish(entry);
+		}
+		else {
+			e.printStackTrace();
+		}
+	}
 
 	public static boolean isEnabled(LogLevel level) {
-		if (level.getPriority() >= getFilterLevel().getPriority()) {
-			return true;
-		}
-		return false;
+		return level.getPriority() >= filterLevel.getPriority();
 	}
 
 	public static LogLevel getFilterLevel() {
@@ -160,14 +228,126 @@ public class Logger {
 	public static void error(Throwable e) {
 		log(e.getMessage(), LEVEL_ERROR);
 		if (getFilterLevel().getPriority() <= LEVEL_ERROR.getPriority()) {
-			e.printStackTrace();
+			printStackTrace(e);
 		}
 	}
 	public static void error(String message, Throwable e) {
 		log(message, LEVEL_ERROR);
 		log(e.getMessage(), LEVEL_ERROR);
 		if (getFilterLevel().getPriority() <= LEVEL_ERROR.getPriority()) {
-			e.printStackTrace();
+			printStackTrace(e);
+		}
+	}
+	
+	/*
+	 * parameterized variants: {} placeholders in format are replaced by the arguments in order,
+	 * the message is built only if the level is enabled.
+	 * fixed arities avoid allocating the varargs array on filtered calls
+	 */
+	public static void trace(Supplier<String> message) {
+		if (isEnabled(LEVEL_TRACE)) log(message.get(), LEVEL_TRACE);
+	}
+	public static void tracef(String format, Object arg0) {
+		if (isEnabled(LEVEL_TRACE)) log(format(format, arg0), LEVEL_TRACE);
+	}
+	public static void tracef(String format, Object arg0, Object arg1) {
+		if (isEnabled(LEVEL_TRACE)) log(format(format, arg0, arg1), LEVEL_TRACE);
+	}
+	public static void tracef(String format, Object arg0, Object arg1, Object arg2) {
+		if (isEnabled(LEVEL_TRACE)) log(format(format, arg0, arg1, arg2), LEVEL_TRACE);
+	}
+	public static void tracef(String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LEVEL_TRACE)) log(format(format, arg0, arg1, arg2, arg3), LEVEL_TRACE);
+	}
+	public static void tracef(String format, Object... args) {
+		if (isEnabled(LEVEL_TRACE)) log(format(format, args), LEVEL_TRACE);
+	}
+	public static void debug(Supplier<String> message) {
+		if (isEnabled(LEVEL_DEBUG)) log(message.get(), LEVEL_DEBUG);
+	}
+	public static void debugf(String format, Object arg0) {
+		if (isEnabled(LEVEL_DEBUG)) log(format(format, arg0), LEVEL_DEBUG);
+	}
+	public static void debugf(String format, Object arg0, Object arg1) {
+		if (isEnabled(LEVEL_DEBUG)) log(format(format, arg0, arg1), LEVEL_DEBUG);
+	}
+	public static void debugf(String format, Object arg0, Object arg1, Object arg2) {
+		if (isEnabled(LEVEL_DEBUG)) log(format(format, arg0, arg1, arg2), LEVEL_DEBUG);
+	}
+	public static void debugf(String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LEVEL_DEBUG)) log(format(format, arg0, arg1, arg2, arg3), LEVEL_DEBUG);
+	}
+	public static void debugf(String format, Object... args) {
+		if (isEnabled(LEVEL_DEBUG)) log(format(format, args), LEVEL_DEBUG);
+	}
+	public static void info(Supplier<String> message) {
+		if (isEnabled(LEVEL_INFO)) log(message.get(), LEVEL_INFO);
+	}
+	public static void infof(String format, Object arg0) {
+		if (isEnabled(LEVEL_INFO)) log(format(format, arg0), LEVEL_INFO);
+	}
+	public static void infof(String format, Object arg0, Object arg1) {
+		if (isEnabled(LEVEL_INFO)) log(format(format, arg0, arg1), LEVEL_INFO);
+	}
+	public static void infof(String format, Object arg0, Object arg1, Object arg2) {
+		if (isEnabled(LEVEL_INFO)) log(format(format, arg0, arg1, arg2), LEVEL_INFO);
+	}
+	public static void infof(String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LEVEL_INFO)) log(format(format, arg0, arg1, arg2, arg3), LEVEL_INFO);
+	}
+	public static void infof(String format, Object... args) {
+		if (isEnabled(LEVEL_INFO)) log(format(format, args), LEVEL_INFO);
+	}
+	public static void warn(Supplier<String> message) {
+		if (isEnabled(LEVEL_WARNING)) log(message.get(), LEVEL_WARNING);
+	}
+	public static void warnf(String format, Object arg0) {
+		if (isEnabled(LEVEL_WARNING)) log(format(format, arg0), LEVEL_WARNING);
+	}
+	public static void warnf(String format, Object arg0, Object arg1) {
+		if (isEnabled(LEVEL_WARNING)) log(format(format, arg0, arg1), LEVEL_WARNING);
+	}
+	public static void warnf(String format, Object arg0, Object arg1, Object arg2) {
+		if (isEnabled(LEVEL_WARNING)) log(format(format, arg0, arg1, arg2), LEVEL_WARNING);
+	}
+	public static void warnf(String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LEVEL_WARNING)) log(format(format, arg0, arg1, arg2, arg3), LEVEL_WARNING);
+	}
+	public static void warnf(String format, Object... args) {
+		if (isEnabled(LEVEL_WARNING)) log(format(format, args), LEVEL_WARNING);
+	}
+	public static void error(Supplier<String> message) {
+		if (isEnabled(LEVEL_ERROR)) log(message.get(), LEVEL_ERROR);
+	}
+	public static void errorf(String format, Object arg0) {
+		if (isEnabled(LEVEL_ERROR)) log(format(format, arg0), LEVEL_ERROR);
+	}
+	public static void errorf(String format, Object arg0, Object arg1) {
+		if (isEnabled(LEVEL_ERROR)) log(format(format, arg0, arg1), LEVEL_ERROR);
+	}
+	public static void errorf(String format, Object arg0, Object arg1, Object arg2) {
+		if (isEnabled(LEVEL_ERROR)) log(format(format, arg0, arg1, arg2), LEVEL_ERROR);
+	}
+	public static void errorf(String format, Object arg0, Object arg1, Object arg2, Object arg3) {
+		if (isEnabled(LEVEL_ERROR)) log(format(format, arg0, arg1, arg2, arg3), LEVEL_ERROR);
+	}
+	public static void errorf(String format, Object... args) {
+		if (isEnabled(LEVEL_ERROR)) log(format(format, args), LEVEL_ERROR);
+	}
+	
+	public static String format(String format, Object... args) {
+		if (format == null) return null;
+		
+		StringBuilder sb = new StringBuilder(format.length() + 16 * args.length);
+		int from = 0;
+		int argIndex = 0;
+		int at;
+		while (argIndex < args.length && (at = format.indexOf("{}", from)) >= 0) {
+			sb.append(format, from, at);
+			sb.append(args[argIndex ++]);
+			from = at + 2;
 		}
+		sb.append(format, from, format.length());
+		return sb.toString();
 	}
 }
@@ -0,0 +1,161 @@
+package com.ff.magicHotDeployer.engine;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.io.FileUtils;
+import org.ini4j.Ini;
+import org.ini4j.IniPreferences;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ff.magicHotDeployer.configuration.ConfigurationProvider;
+import com.ff.magicHotDeployer.logging.Logger;
+
+/**
+ * deletions happening during an event storm are applied by the sync that follows it,
+ * even without syncDelete and for files this instance does not know it deployed
+ */
+public class StormSyncTest {
+
+	private static final int FILES = 60;
+	private static final long TIMEOUT_MILLIS = 20000L;
+
+	private Path root;
+	private Path source;
+	private Path target;
+	private Thread engineThread;
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("mhd-storm-test");
+		source = root.resolve("source");
+		target = root.resolve("target");
+		Files.createDirectories(source);
+		Files.createDirectories(target);
+
+		Ini ini = new Ini();
+		ini.put("test", ConfigurationProvider.PARAM_INSTANCE_NAME, "storm");
+		ini.put("test", ConfigurationProvider.PARAM_SOURCE_FOLDER, source.toString());
+		ini.put("test", ConfigurationProvider.PARAM_DEST_ABSOLUTE, target.toString());
+		ini.put("test", ConfigurationProvider.PARAM_LOG_LEVEL, "warn");
+		// without the cache nothing is known to be ours: only the storm can tell what was deleted
+		ini.put("test", ConfigurationProvider.PARAM_FINGERPRINT_CACHE, "false");
+		ini.put("test", ConfigurationProvider.PARAM_STORM_RATE, "10");
+		ini.put("test", ConfigurationProvider.PARAM_STORM_QUIET_PERIOD, "300");
+
+		ConfigurationProvider cfg = new ConfigurationProvider(
+			ConfigurationProvider.parseCommandLine(new String[0]),
+			new IniPreferences(ini).node("test"),
+			null
+		);
+		cfg.reload();
+
+		final MagicHotDeployerEngine engine = new MagicHotDeployerEngine(cfg, new SharedWatchService());
+		engineThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					engine.run();
+				} catch (Throwable e) {
+					Logger.error("engine failed", e);
+				}
+			}
+		}, "storm-test-engine");
+		engineThread.setDaemon(true);
+		engineThread.start();
+		// the watcher is up once the first file shows up in the target
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				Files.write(source.resolve("probe.txt"), "probe".getBytes("UTF-8"));
+				return Files.exists(target.resolve("probe.txt"));
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		// the engine stops when its source folder is gone
+		FileUtils.deleteDirectory(source.toFile());
+		engineThread.join(TIMEOUT_MILLIS);
+		FileUtils.deleteDirectory(root.toFile());
+	}
+
+	@Test
+	public void deletesDuringStormAreApplied() throws Exception {
+		for (int i = 0; i < FILES; i ++) {
+			write("com/acme/removed/Removed" + i + ".class");
+			write("com/acme/kept/Kept" + i + ".class");
+			write("com/acme/kept/Deleted" + i + ".class");
+		}
+		// not in the source, and in a folder with no events
+		Files.createDirectories(target.resolve("META-INF"));
+		Files.write(target.resolve("META-INF/foreign.xml"), "foreign".getBytes("UTF-8"));
+		waitForDeployed(source);
+
+		// a whole folder and single files, far beyond the storm rate
+		FileUtils.deleteDirectory(source.resolve("com/acme/removed").toFile());
+		for (int i = 0; i < FILES; i ++) {
+			Files.delete(source.resolve("com/acme/kept/Deleted" + i + ".class"));
+		}
+
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				if (Files.exists(target.resolve("com/acme/removed"))) {
+					return false;
+				}
+				for (int i = 0; i < FILES; i ++) {
+					if (Files.exists(target.resolve("com/acme/kept/Deleted" + i + ".class"))) {
+						return false;
+					}
+				}
+				return true;
+			}
+		});
+
+		for (int i = 0; i < FILES; i ++) {
+			assertTrue(Files.exists(target.resolve("com/acme/kept/Kept" + i + ".class")));
+		}
+		assertTrue(Files.exists(target.resolve("META-INF/foreign.xml")));
+		assertFalse(Files.exists(target.resolve("com/acme/removed")));
+	}
+
+	private void write(String relative) throws IOException {
+		Path file = source.resolve(relative);
+		Files.createDirectories(file.getParent());
+		Files.write(file, relative.getBytes("UTF-8"));
+	}
+
+	private void waitForDeployed(final Path folder) throws Exception {
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws IOException {
+				for (File file : FileUtils.listFiles(folder.toFile(), null, true)) {
+					if (!Files.exists(target.resolve(source.relativize(file.toPath())))) {
+						return false;
+					}
+				}
+				return true;
+			}
+		});
+	}
+
+	private static void waitFor(Callable<Boolean> condition) throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!condition.call()) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("timed out after " + TIMEOUT_MILLIS + " ms");
+			}
+			Thread.sleep(50L);
+		}
+	}
+}
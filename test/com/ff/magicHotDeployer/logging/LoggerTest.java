@@ -0,0 +1,110 @@
+package com.ff.magicHotDeployer.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * calls below the filter level cost nothing: suppliers are not called, arguments are not formatted
+ * and nothing is allocated
+ */
+public class LoggerTest {
+
+	private static final int CALLS = 100000;
+
+	private LogLevel previousLevel;
+	private CountingSupplier supplier = new CountingSupplier();
+	private CountingArgument argument = new CountingArgument();
+
+	@Before
+	public void setUp() {
+		previousLevel = Logger.getFilterLevel();
+		Logger.setFilterLevel(Logger.LEVEL_WARNING);
+	}
+
+	@After
+	public void tearDown() {
+		Logger.setFilterLevel(previousLevel);
+	}
+
+	@Test
+	public void filteredSuppliersAreNotCalled() {
+		Logger.trace(supplier);
+		Logger.debug(supplier);
+		Logger.info(supplier);
+
+		assertEquals(0, supplier.calls);
+	}
+
+	@Test
+	public void filteredArgumentsAreNotFormatted() {
+		Logger.tracef("{}", argument);
+		Logger.debugf("{} {}", argument, argument);
+		Logger.debugf("{} {} {}", argument, argument, argument);
+		Logger.infof("{} {} {} {}", argument, argument, argument, argument);
+		Logger.infof("{} {} {} {} {}", argument, argument, argument, argument, argument);
+
+		assertEquals(0, argument.calls);
+	}
+
+	@Test
+	public void filteredCallsDoNotAllocate() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+		long thread = Thread.currentThread().getId();
+
+		// warm up first, so that the measured loop runs compiled
+		filteredCalls(CALLS);
+		long before = threads.getThreadAllocatedBytes(thread);
+		filteredCalls(CALLS);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		// a single object per call would be well beyond one byte per call
+		assertTrue("allocated " + allocated + " bytes in " + CALLS + " filtered calls", allocated < CALLS);
+	}
+
+	@Test
+	public void enabledCallsFormat() {
+		assertEquals("a 1 b 2", Logger.format("a {} b {}", 1, 2));
+		assertEquals("missing {}", Logger.format("missing {}"));
+		assertEquals("extra 1", Logger.format("extra {}", 1, 2));
+	}
+
+	private void filteredCalls(int calls) {
+		for (int i = 0; i < calls; i ++) {
+			Logger.debug(supplier);
+			Logger.tracef("{}", argument);
+			Logger.debugf("{} {}", argument, argument);
+			Logger.infof("{} {} {}", argument, argument, argument);
+			Logger.debugf("{} {} {} {}", argument, argument, argument, argument);
+		}
+	}
+
+	private static class CountingSupplier implements Supplier<String> {
+		private int calls = 0;
+
+		@Override
+		public String get() {
+			calls ++;
+			return "message";
+		}
+	}
+
+	private static class CountingArgument {
+		private int calls = 0;
+
+		@Override
+		public String toString() {
+			calls ++;
+			return "argument";
+		}
+	}
+}